@@ -0,0 +1,150 @@
+package com.cusservice.bsit.config;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Outbound side of one connection, see {@link OutboundBufferManager}.
+ *
+ * sendMessage only queues the frame and returns; a writer task drains the
+ * queue, so a stalled client blocks its own writer and nothing else. When the
+ * queued bytes pass the limit, frames whose policy allows it are shed oldest
+ * first. If only reliable frames are left over the limit, or one write has
+ * been stuck too long, the connection is closed and the client resumes.
+ */
+class BufferedWebSocketSession extends WebSocketSessionDecorator {
+
+    private record Frame(WebSocketMessage<?> message, String destination,
+                         OutboundBufferManager.Policy policy, int size) {
+    }
+
+    private final OutboundBufferManager manager;
+
+    // Guarded by "this"
+    private final Deque<Frame> pending = new ArrayDeque<>();
+    private int pendingBytes;
+    private boolean writing;
+    private long writeStartedAt;
+    private boolean closed;
+
+    BufferedWebSocketSession(WebSocketSession delegate, OutboundBufferManager manager) {
+        super(delegate);
+        this.manager = manager;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        String destination = OutboundBufferManager.destinationOf(message);
+        Frame frame = new Frame(message, destination, manager.policyFor(destination), message.getPayloadLength());
+        boolean startWriter;
+        boolean slowConsumer;
+        int occupancy;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (frame.policy() == OutboundBufferManager.Policy.COALESCE) {
+                // Only the newest frame for the destination is worth sending
+                shed(queued -> destination.equals(queued.destination()), 0);
+            }
+            pending.addLast(frame);
+            pendingBytes += frame.size();
+            manager.buffered(frame.size());
+
+            if (pendingBytes > manager.getBufferLimitBytes()) {
+                shed(queued -> queued.policy() != OutboundBufferManager.Policy.RELIABLE, manager.getBufferLimitBytes());
+            }
+            boolean overLimit = pendingBytes > manager.getBufferLimitBytes() && pending.size() > 1;
+            long now = System.currentTimeMillis();
+            boolean stuck = writing && now - writeStartedAt > manager.getSendTimeLimitMillis();
+            slowConsumer = overLimit || stuck;
+            startWriter = !writing && !slowConsumer;
+            if (startWriter) {
+                writing = true;
+                writeStartedAt = now;
+            }
+            occupancy = pendingBytes;
+        }
+        manager.recordOccupancy(occupancy);
+
+        if (slowConsumer) {
+            closeSlowConsumer();
+        } else if (startWriter) {
+            manager.startWriter(this::drain);
+        }
+    }
+
+    synchronized int getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Forget everything still queued once the connection is gone
+     */
+    void discard() {
+        synchronized (this) {
+            closed = true;
+            manager.released(pendingBytes);
+            pending.clear();
+            pendingBytes = 0;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                frame = pending.pollFirst();
+                if (frame == null || closed) {
+                    writing = false;
+                    return;
+                }
+                pendingBytes -= frame.size();
+                manager.released(frame.size());
+                writeStartedAt = System.currentTimeMillis();
+            }
+            try {
+                getDelegate().sendMessage(frame.message());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Outbound write to WebSocket session " + getId() + " failed: " + e.getMessage());
+                synchronized (this) {
+                    writing = false;
+                }
+                discard();
+                return;
+            }
+        }
+    }
+
+    // Remove matching frames, oldest first, until the queue is within the target size
+    private void shed(Predicate<Frame> droppable, int targetBytes) {
+        Iterator<Frame> frames = pending.iterator();
+        while (frames.hasNext() && pendingBytes > targetBytes) {
+            Frame queued = frames.next();
+            if (droppable.test(queued)) {
+                frames.remove();
+                pendingBytes -= queued.size();
+                manager.dropped(queued.policy(), queued.size());
+            }
+        }
+    }
+
+    private void closeSlowConsumer() {
+        discard();
+        manager.slowConsumerClosed();
+        try {
+            // The client reconnects and resumes from its last sequence number
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not close slow WebSocket session " + getId() + ": " + e.getMessage());
+        }
+    }
+}
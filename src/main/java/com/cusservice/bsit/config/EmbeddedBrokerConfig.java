@@ -0,0 +1,41 @@
+package com.cusservice.bsit.config;
+
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Files;
+
+/**
+ * In-VM Artemis broker for chat.broker.mode=relay, for a single host or tests.
+ *
+ * Accepts STOMP on chat.broker.relay.port. "/queue/" destinations are
+ * point-to-point and "/topic/" ones publish-subscribe, as with the simple
+ * broker. Nothing is persisted; clients recover missed frames through resume.
+ * Security is off, so keep the bind host private.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.broker.embedded.enabled", havingValue = "true")
+public class EmbeddedBrokerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ embeddedBroker(@Value("${chat.broker.embedded.bind-host:localhost}") String bindHost,
+                                           @Value("${chat.broker.relay.port:61613}") int port) throws Exception {
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        configuration.setJMXManagementEnabled(false);
+        // Paging and large messages still need somewhere to write
+        configuration.setBrokerInstance(Files.createTempDirectory("chat-broker").toFile());
+        configuration.addAcceptorConfiguration("stomp", "tcp://" + bindHost + ":" + port
+                + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        System.out.println("Embedded STOMP broker listening on " + bindHost + ":" + port);
+        return broker;
+    }
+}
@@ -0,0 +1,216 @@
+package com.cusservice.bsit.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded outbound buffers for every WebSocket connection.
+ *
+ * Each connection gets a small queue (chat.outbound.buffer-limit-bytes) drained
+ * by its own virtual-thread writer. Frames are classed by STOMP destination:
+ * "coalesce" destinations keep only their newest queued frame and, like
+ * "droppable" ones, are shed first when the queue is full. Everything else,
+ * including /user/queue/messages, is never dropped; a connection that cannot
+ * keep up with those is closed and the client resumes from its last sequence.
+ */
+@Component
+public class OutboundBufferManager {
+
+    public enum Policy {
+        RELIABLE,
+        COALESCE,
+        DROPPABLE
+    }
+
+    private static final String DESTINATION_HEADER = "\ndestination:";
+    // STOMP headers of outbound MESSAGE frames fit comfortably in this
+    private static final int HEADER_SCAN_BYTES = 512;
+
+    private final int bufferLimitBytes;
+    private final long sendTimeLimitMillis;
+    private final List<String> coalescePrefixes;
+    private final List<String> droppablePrefixes;
+
+    private final ExecutorService writers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-outbound-", 0).factory());
+    private final Map<String, BufferedWebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private final DistributionSummary occupancy;
+    private final Map<Policy, Counter> dropped = new EnumMap<>(Policy.class);
+    private final Counter slowConsumersClosed;
+
+    public OutboundBufferManager(MeterRegistry meterRegistry,
+                                 @Value("${chat.outbound.buffer-limit-bytes:65536}") int bufferLimitBytes,
+                                 @Value("${chat.outbound.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+                                 @Value("${chat.outbound.coalesce-destinations:/topic/queue-updates}") List<String> coalescePrefixes,
+                                 @Value("${chat.outbound.droppable-destinations:}") List<String> droppablePrefixes) {
+        this.bufferLimitBytes = bufferLimitBytes;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.coalescePrefixes = coalescePrefixes.stream().filter(prefix -> !prefix.isBlank()).toList();
+        this.droppablePrefixes = droppablePrefixes.stream().filter(prefix -> !prefix.isBlank()).toList();
+
+        this.occupancy = DistributionSummary.builder("chat.outbound.buffer.occupancy")
+                .baseUnit("bytes")
+                .description("Bytes queued on a connection each time a frame is added")
+                .register(meterRegistry);
+        for (Policy policy : List.of(Policy.COALESCE, Policy.DROPPABLE)) {
+            dropped.put(policy, Counter.builder("chat.outbound.dropped")
+                    .tag("policy", policy.name().toLowerCase())
+                    .description("Queued frames discarded for a slow connection")
+                    .register(meterRegistry));
+        }
+        this.slowConsumersClosed = Counter.builder("chat.outbound.slow-consumers.closed")
+                .description("Connections closed because reliable frames backed up")
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.buffered.bytes", bufferedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .description("Bytes queued across all connections")
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.connections", sessions, Map::size)
+                .description("Connections with an outbound buffer")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decorator factory for WebSocketTransportRegistration
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BufferedWebSocketSession buffered = new BufferedWebSocketSession(session, OutboundBufferManager.this);
+                sessions.put(session.getId(), buffered);
+                super.afterConnectionEstablished(buffered);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BufferedWebSocketSession buffered = sessions.remove(session.getId());
+                if (buffered != null) {
+                    buffered.discard();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    public int getBufferLimitBytes() {
+        return bufferLimitBytes;
+    }
+
+    public long getSendTimeLimitMillis() {
+        return sendTimeLimitMillis;
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    Policy policyFor(String destination) {
+        if (destination == null) {
+            // CONNECTED, RECEIPT, ERROR and heartbeats
+            return Policy.RELIABLE;
+        }
+        if (matches(coalescePrefixes, destination)) {
+            return Policy.COALESCE;
+        }
+        if (matches(droppablePrefixes, destination)) {
+            return Policy.DROPPABLE;
+        }
+        return Policy.RELIABLE;
+    }
+
+    /**
+     * Destination header of a STOMP MESSAGE frame, or null for any other frame
+     */
+    static String destinationOf(WebSocketMessage<?> message) {
+        String head;
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            head = payload.substring(0, Math.min(payload.length(), HEADER_SCAN_BYTES));
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(payload.remaining(), HEADER_SCAN_BYTES)];
+            payload.get(bytes);
+            head = new String(bytes, StandardCharsets.ISO_8859_1);
+        } else {
+            return null;
+        }
+        if (!head.startsWith("MESSAGE\n")) {
+            return null;
+        }
+        int headersEnd = head.indexOf("\n\n");
+        int start = head.indexOf(DESTINATION_HEADER);
+        if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+            return null;
+        }
+        start += DESTINATION_HEADER.length();
+        int end = head.indexOf('\n', start);
+        return end < 0 ? null : head.substring(start, end);
+    }
+
+    void startWriter(Runnable drain) {
+        writers.execute(drain);
+    }
+
+    void buffered(int bytes) {
+        bufferedBytes.addAndGet(bytes);
+    }
+
+    void released(int bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    void dropped(Policy policy, int bytes) {
+        released(bytes);
+        Counter counter = dropped.get(policy);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    void recordOccupancy(int bytes) {
+        occupancy.record(bytes);
+    }
+
+    void slowConsumerClosed() {
+        slowConsumersClosed.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+
+    private static boolean matches(List<String> prefixes, String destination) {
+        for (String prefix : prefixes) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -37,7 +37,7 @@ public class SecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/", "/login", "/register", "/verify-email", "/resend-verification",
                         "/css/**", "/js/**", "/images/**", "/logo/**", "/webjars/**", "/h2-console/**",
-                        "/chat/anonymous/**", "/ws/**").permitAll()
+                        "/chat/anonymous/**", "/ws/**", "/ws-native").permitAll()
                 .requestMatchers("/student/**").hasAuthority("STUDENT")
                 .requestMatchers("/teacher/**").hasAuthority("TEACHER")
                 .requestMatchers("/support/**").hasAuthority("SUPPORT_AGENT")
@@ -56,7 +56,7 @@ public class SecurityConfig {
                 .permitAll()
             )
             .csrf(csrf -> csrf
-                .ignoringRequestMatchers("/ws/**", "/h2-console/**")
+                .ignoringRequestMatchers("/ws/**", "/ws-native", "/h2-console/**")
             )
             .headers(headers -> headers
                 .frameOptions(frame -> frame.sameOrigin())
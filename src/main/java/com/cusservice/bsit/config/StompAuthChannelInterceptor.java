@@ -0,0 +1,58 @@
+package com.cusservice.bsit.config;
+
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.UserRepository;
+import com.cusservice.bsit.service.ChatPrincipal;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Authenticates STOMP connections once, on CONNECT.
+ *
+ * The logged-in user from the HTTP handshake is loaded a single time and
+ * replaced by a {@link ChatPrincipal}, which Spring then attaches to every
+ * later frame of the connection. Connections without a logged-in user are
+ * refused.
+ */
+@Component
+@RequiredArgsConstructor
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    public static final String PRINCIPAL_ATTRIBUTE = "chatPrincipal";
+
+    // Repository rather than UserService: the broker configuration must not depend on messaging beans
+    private final UserRepository userRepository;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) {
+            return message;
+        }
+
+        Principal handshakeUser = accessor.getUser();
+        if (handshakeUser == null) {
+            throw new MessagingException(message, "Login required to open a chat connection");
+        }
+        User user = userRepository.findByUsername(handshakeUser.getName())
+                .orElseThrow(() -> new MessagingException(message, "Unknown user: " + handshakeUser.getName()));
+
+        ChatPrincipal principal = ChatPrincipal.of(user);
+        accessor.setUser(principal);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null) {
+            attributes.put(PRINCIPAL_ATTRIBUTE, principal);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,127 @@
+package com.cusservice.bsit.config;
+
+import com.cusservice.bsit.service.ChatNotificationService;
+import com.cusservice.bsit.service.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user rate limits on inbound STOMP SEND frames.
+ *
+ * Each user gets a lock-free token bucket per destination: chat messages and
+ * ICE candidates have their own limits, every other /app destination shares a
+ * default one. Frames over the limit are dropped before they reach a
+ * controller, and the sender is told with an ERROR notification (at most one
+ * every few seconds, so the warning cannot become a flood of its own).
+ */
+@Component
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+
+    public static final String MESSAGE_DESTINATION = "/app/chat/message";
+    public static final String ICE_DESTINATION = "/app/call/ice-candidate";
+
+    // Buckets are grouped by limit, so unknown destinations cannot create unbounded state
+    private record Limit(String name, int burst, long refillMillis, Counter rejected) {
+    }
+
+    private static final long WARNING_INTERVAL_SECONDS = 5;
+
+    private final ChatNotificationService notificationService;
+    private final Limit messageLimit;
+    private final Limit iceLimit;
+    private final Limit defaultLimit;
+
+    // username + limit name -> bucket
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> warnings = new ConcurrentHashMap<>();
+
+    // Notifications go through the broker, which itself is configured with this interceptor
+    public StompRateLimitInterceptor(@Lazy ChatNotificationService notificationService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.rate-limit.message.burst:10}") int messageBurst,
+                                     @Value("${chat.rate-limit.message.refill-ms:500}") long messageRefillMillis,
+                                     @Value("${chat.rate-limit.ice.burst:50}") int iceBurst,
+                                     @Value("${chat.rate-limit.ice.refill-ms:50}") long iceRefillMillis,
+                                     @Value("${chat.rate-limit.default.burst:20}") int defaultBurst,
+                                     @Value("${chat.rate-limit.default.refill-ms:250}") long defaultRefillMillis) {
+        this.notificationService = notificationService;
+        this.messageLimit = limit("message", messageBurst, messageRefillMillis, meterRegistry);
+        this.iceLimit = limit("ice-candidate", iceBurst, iceRefillMillis, meterRegistry);
+        this.defaultLimit = limit("default", defaultBurst, defaultRefillMillis, meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.SEND) {
+            return message;
+        }
+        Principal user = accessor.getUser();
+        if (user == null) {
+            return message;
+        }
+
+        Limit limit = limitFor(accessor.getDestination());
+        TokenBucket bucket = buckets.computeIfAbsent(user.getName() + "|" + limit.name(),
+                key -> new TokenBucket(limit.burst(), limit.refillMillis(), TimeUnit.MILLISECONDS));
+        if (bucket.tryAcquire()) {
+            return message;
+        }
+
+        limit.rejected().increment();
+        warn(user.getName());
+        // Returning null drops the frame
+        return null;
+    }
+
+    /**
+     * Drop buckets that have refilled, i.e. users who have gone quiet
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+        warnings.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private Limit limitFor(String destination) {
+        if (MESSAGE_DESTINATION.equals(destination)) {
+            return messageLimit;
+        }
+        if (ICE_DESTINATION.equals(destination)) {
+            return iceLimit;
+        }
+        return defaultLimit;
+    }
+
+    private void warn(String username) {
+        TokenBucket warning = warnings.computeIfAbsent(username,
+                key -> new TokenBucket(1, WARNING_INTERVAL_SECONDS, TimeUnit.SECONDS));
+        if (warning.tryAcquire()) {
+            notificationService.sendError(username, "You are sending too fast. Some messages were not delivered.");
+        }
+    }
+
+    private static Limit limit(String name, int burst, long refillMillis, MeterRegistry meterRegistry) {
+        Counter rejected = Counter.builder("chat.ratelimit.rejected")
+                .tag("limit", name)
+                .description("Inbound STOMP frames dropped by the per-user rate limit")
+                .register(meterRegistry);
+        return new Limit(name, burst, refillMillis, rejected);
+    }
+}
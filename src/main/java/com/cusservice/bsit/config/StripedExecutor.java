@@ -0,0 +1,105 @@
+package com.cusservice.bsit.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor for the STOMP inbound channel that keeps each conversation in order.
+ *
+ * Frames are routed to one of N single-lane stripes by their "chat-session"
+ * STOMP header, falling back to the WebSocket session ID. Everything for one
+ * chat runs in arrival order on one lane, while different chats run in
+ * parallel. Each lane is a single virtual thread with its own queue.
+ *
+ * Lanes are deliberately not keyed by connection: the two participants of a
+ * chat are on different connections, and their messages must be sequenced
+ * together. Clients therefore put the header on every frame that touches a
+ * chat, including SUBSCRIBE once a chat is known, so a reconnect's
+ * subscriptions are registered before its resume replays anything. Frames
+ * left without it (presence, call signalling, chat start/accept, DISCONNECT)
+ * stay ordered among themselves on the connection's lane and do not depend
+ * on chat frames; a chat only gets its first keyed frame after the client has
+ * seen the reply to its start or accept.
+ *
+ * Other work can be given its own key through {@link #execute(Object, Runnable)}.
+ */
+public class StripedExecutor implements TaskExecutor {
+
+    public static final String CHAT_SESSION_HEADER = "chat-session";
+
+    private final ThreadPoolExecutor[] stripes;
+
+    /**
+     * @param name names the lane threads and the {@code chat.<name>.stripe.queue} gauges
+     */
+    public StripedExecutor(String name, int stripeCount, int queueCapacity, MeterRegistry meterRegistry) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        this.stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    Thread.ofVirtual().name("chat-" + name + "-" + i + "-", 0).factory());
+            stripes[i] = lane;
+            Gauge.builder("chat." + name + ".stripe.queue", lane, executor -> executor.getQueue().size())
+                    .tag("stripe", String.valueOf(i))
+                    .description("Tasks waiting on this stripe")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        stripes[stripeFor(task)].execute(task);
+    }
+
+    /**
+     * Run a task after every earlier task with the same key
+     */
+    public void execute(Object key, Runnable task) {
+        stripes[indexOf(key)].execute(task);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : stripes) {
+            lane.shutdown();
+        }
+    }
+
+    int stripeFor(Runnable task) {
+        Object key = task instanceof MessageHandlingRunnable handling ? keyOf(handling.getMessage()) : null;
+        if (key == null) {
+            // Not a message task; any lane will do
+            key = task;
+        }
+        return indexOf(key);
+    }
+
+    private int indexOf(Object key) {
+        return Math.floorMod(spread(key.hashCode()), stripes.length);
+    }
+
+    private static Object keyOf(Message<?> message) {
+        String chatSession = NativeMessageHeaderAccessor.getFirstNativeHeader(CHAT_SESSION_HEADER, message.getHeaders());
+        return chatSession != null ? chatSession : SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    }
+
+    // Mix the high bits in, as HashMap does, so similar keys spread over the lanes
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,6 +1,11 @@
 package com.cusservice.bsit.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -9,29 +14,105 @@ import org.springframework.web.socket.config.annotation.WebSocketTransportRegist
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    private final StompRateLimitInterceptor stompRateLimitInterceptor;
+    private final OutboundBufferManager outboundBufferManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.inbound.stripes:16}")
+    private int inboundStripes;
+
+    @Value("${chat.inbound.stripe-queue-capacity:10000}")
+    private int inboundStripeQueueCapacity;
+
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${chat.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+
+    @Value("${chat.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${chat.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    /**
+     * Inbound frames run in order per chat session and in parallel across chats
+     */
+    @Bean(destroyMethod = "shutdown")
+    public StripedExecutor inboundStripedExecutor() {
+        return new StripedExecutor("inbound", inboundStripes, inboundStripeQueueCapacity, meterRegistry);
+    }
+
+    /**
+     * "simple" keeps subscriptions in this JVM. "relay" forwards them to a
+     * STOMP broker shared by every node, so any node can reach any client.
+     */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayClientLogin)
+                    .setClientPasscode(relayClientPasscode)
+                    .setSystemLogin(relaySystemLogin)
+                    .setSystemPasscode(relaySystemPasscode)
+                    // Nodes share who is connected where; messages for a user this node
+                    // cannot place are broadcast so the node holding their connection delivers them
+                    .setUserRegistryBroadcast("/topic/simp-user-registry")
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination");
+        } else {
+            config.enableSimpleBroker("/topic", "/queue");
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
 
+    /**
+     * Browsers connect to the plain WebSocket endpoint first; Tomcat negotiates
+     * permessage-deflate there when the client offers it, which browsers do by
+     * default. SockJS stays on "/ws" for networks that block WebSockets.
+     */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*");
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Resolve the user once per connection instead of once per frame,
+        // then drop floods before they reach a controller
+        registration.interceptors(stompAuthChannelInterceptor, stompRateLimitInterceptor);
+        registration.executor(inboundStripedExecutor());
+    }
+
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
-        // Increase message size limit to 10MB (10 * 1024 * 1024 bytes)
-        registration.setMessageSizeLimit(10 * 1024 * 1024);
-        // Increase send buffer size limit to 10MB
-        registration.setSendBufferSizeLimit(10 * 1024 * 1024);
-        // Increase send time limit to 20 seconds
-        registration.setSendTimeLimit(20 * 1000);
+        // Images and files are uploaded over HTTP, so frames only carry text and references
+        registration.setMessageSizeLimit(256 * 1024);
+        // Writes are queued per connection by the outbound buffer manager, so
+        // Spring's own send buffer and time limit are only a backstop and follow
+        // the manager's settings
+        registration.setSendBufferSizeLimit(outboundBufferManager.getBufferLimitBytes());
+        registration.setSendTimeLimit((int) outboundBufferManager.getSendTimeLimitMillis());
+        registration.addDecoratorFactory(outboundBufferManager::decorate);
     }
 }
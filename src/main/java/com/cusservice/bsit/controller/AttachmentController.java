@@ -0,0 +1,94 @@
+package com.cusservice.bsit.controller;
+
+import com.cusservice.bsit.model.Attachment;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.service.AttachmentStore;
+import com.cusservice.bsit.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/api/attachments")
+@RequiredArgsConstructor
+public class AttachmentController {
+    
+    private final AttachmentStore attachmentStore;
+    private final UserService userService;
+    
+    /**
+     * Upload a file; the returned URL is what IMAGE/FILE chat messages carry
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> upload(@RequestParam("file") MultipartFile file,
+                                                      @AuthenticationPrincipal UserDetails userDetails) {
+        Optional<User> userOpt = userService.findByUsername(userDetails.getUsername());
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
+        }
+        
+        try {
+            Attachment attachment = attachmentStore.store(file, userOpt.get());
+            Map<String, Object> response = new HashMap<>();
+            response.put("id", attachment.getId());
+            response.put("url", attachmentStore.urlOf(attachment));
+            response.put("contentType", attachment.getContentType());
+            response.put("size", attachment.getSize());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            System.err.println("Error storing attachment: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(Map.of("error", "Could not store file"));
+        }
+    }
+    
+    /**
+     * Download an attachment. Range requests are answered with 206 and only
+     * the requested region is read from disk. The content never changes for
+     * a given ID, so clients may cache it indefinitely.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Resource> download(@PathVariable String id) {
+        Optional<Attachment> attachmentOpt = attachmentStore.find(id);
+        if (attachmentOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        Attachment attachment = attachmentOpt.get();
+        Resource blob = attachmentStore.open(attachment);
+        if (!blob.exists()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        // Only images are shown inline; anything else is a download, never rendered as a page
+        MediaType contentType = attachment.isImage()
+                ? MediaType.parseMediaType(attachment.getContentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        ContentDisposition disposition = (attachment.isImage() ? ContentDisposition.inline() : ContentDisposition.attachment())
+                .filename(attachment.getOriginalName() != null ? attachment.getOriginalName() : id)
+                .build();
+        
+        return ResponseEntity.ok()
+                .eTag("\"" + id + "\"")
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(blob);
+    }
+}
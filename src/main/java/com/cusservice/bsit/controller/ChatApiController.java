@@ -1,31 +1,43 @@
 package com.cusservice.bsit.controller;
 
-import com.cusservice.bsit.model.ChatMessage;
+import com.cusservice.bsit.dto.MessageView;
+import com.cusservice.bsit.dto.QueueSnapshot;
 import com.cusservice.bsit.model.ChatSession;
 import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.service.ActiveSession;
 import com.cusservice.bsit.service.ChatService;
 import com.cusservice.bsit.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/chat")
 @RequiredArgsConstructor
 public class ChatApiController {
     
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    
     private final ChatService chatService;
     private final UserService userService;
     
     /**
-     * Get current session status for logged-in user
+     * Get current session status for logged-in user.
+     * Tagged with an ETag so unchanged polls get 304 Not Modified.
      */
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> getChatStatus(@AuthenticationPrincipal UserDetails userDetails) {
@@ -35,6 +47,7 @@ public class ChatApiController {
         }
         
         User user = userOpt.get();
+        QueueSnapshot queue = chatService.getQueueSnapshot();
         Map<String, Object> status = new HashMap<>();
         
         // Check if student
@@ -47,7 +60,7 @@ public class ChatApiController {
                 if (activeSession.get().getAgent() != null) {
                     status.put("agentName", activeSession.get().getAgent().getFullName());
                 }
-                return ResponseEntity.ok(status);
+                return withQueueEtag(status, queue);
             }
             
             Optional<ChatSession> waitingSession = chatService.getWaitingSessionForStudent(user);
@@ -55,59 +68,110 @@ public class ChatApiController {
                 status.put("hasActiveSession", true);
                 status.put("sessionId", waitingSession.get().getId());
                 status.put("status", "waiting");
-                status.put("position", chatService.getQueuePosition(waitingSession.get().getId()));
-                status.put("queueSize", chatService.getQueueSize());
-                return ResponseEntity.ok(status);
+                int position = chatService.getQueuePosition(waitingSession.get().getId());
+                status.put("position", position);
+                status.put("queueSize", queue.size());
+                status.put("estimatedWaitSeconds", chatService.getEstimatedWaitSeconds(position));
+                return withQueueEtag(status, queue);
             }
             
             status.put("hasActiveSession", false);
-            status.put("queueSize", chatService.getQueueSize());
+            status.put("queueSize", queue.size());
         }
         
         // Check if agent
         if (user.getRole() == User.Role.SUPPORT_AGENT) {
-            List<ChatSession> activeSessions = chatService.getActiveSessionsForAgent(user);
-            status.put("activeSessions", activeSessions.size());
-            status.put("queueSize", chatService.getQueueSize());
-            status.put("waitingStudents", chatService.getWaitingStudents());
+            status.put("activeSessions", chatService.getActiveSessionCount(user));
+            status.put("remainingCapacity", chatService.getRemainingCapacity(user));
+            status.put("queueSize", queue.size());
+            status.put("waitingStudents", queue.waitingStudents());
         }
         
-        return ResponseEntity.ok(status);
+        return withQueueEtag(status, queue);
     }
     
     /**
-     * Get messages for a specific session
+     * Get messages for a specific session, one keyset page at a time.
+     * Returns up to "limit" messages oldest first: the newest ones by default,
+     * older ones with before={oldest ID seen}, newer ones with after={newest ID seen}.
+     * Inline image bodies are replaced by a URL that loads them separately.
      */
     @GetMapping("/session/{sessionId}/messages")
-    public ResponseEntity<List<ChatMessage>> getSessionMessages(
+    public ResponseEntity<List<MessageView>> getSessionMessages(
             @PathVariable Long sessionId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
             @AuthenticationPrincipal UserDetails userDetails) {
         
-        Optional<User> userOpt = userService.findByUsername(userDetails.getUsername());
-        if (userOpt.isEmpty()) {
+        if (!canViewSession(sessionId, userDetails)) {
+            return ResponseEntity.status(403).build();
+        }
+        
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        try {
+            List<MessageView> messages = chatService.getMessagePage(sessionId, before, after, pageSize).stream()
+                    .map(message -> message.hasDeferredContent()
+                            ? message.withContent("/api/chat/session/" + sessionId + "/messages/" + message.id() + "/content")
+                            : message)
+                    .toList();
+            return ResponseEntity.ok(messages);
+        } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
+    }
+    
+    /**
+     * Body of a message stored inline as a data URL (older image messages),
+     * served as the decoded file so it can be used directly as an image source
+     */
+    @GetMapping("/session/{sessionId}/messages/{messageId}/content")
+    public ResponseEntity<byte[]> getMessageContent(
+            @PathVariable Long sessionId,
+            @PathVariable Long messageId,
+            @AuthenticationPrincipal UserDetails userDetails) {
         
-        User user = userOpt.get();
-        Optional<ChatSession> sessionOpt = chatService.getSessionById(sessionId);
+        if (!canViewSession(sessionId, userDetails)) {
+            return ResponseEntity.status(403).build();
+        }
         
-        if (sessionOpt.isEmpty()) {
+        Optional<String> contentOpt = chatService.getMessageContent(sessionId, messageId);
+        if (contentOpt.isEmpty() || !contentOpt.get().startsWith("data:") || contentOpt.get().indexOf(',') < 0) {
             return ResponseEntity.notFound().build();
         }
         
-        ChatSession session = sessionOpt.get();
+        String content = contentOpt.get();
+        int comma = content.indexOf(',');
+        String meta = content.substring("data:".length(), comma);
+        String data = content.substring(comma + 1);
+        byte[] body = meta.endsWith(";base64")
+                ? Base64.getMimeDecoder().decode(data)
+                : URLDecoder.decode(data, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
         
-        // Check if user is authorized to view messages
-        boolean authorized = session.getCustomer().getId().equals(user.getId()) ||
-                           (session.getAgent() != null && session.getAgent().getId().equals(user.getId())) ||
-                           user.getRole() == User.Role.ADMIN;
+        // Only raster images are rendered; anything else is handed over as a plain download
+        String mimeType = meta.split(";")[0];
+        MediaType contentType = mimeType.startsWith("image/") && !mimeType.contains("svg")
+                ? MediaType.parseMediaType(mimeType)
+                : MediaType.APPLICATION_OCTET_STREAM;
         
-        if (!authorized) {
-            return ResponseEntity.status(403).build();
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+                .contentType(contentType)
+                .body(body);
+    }
+    
+    private boolean canViewSession(Long sessionId, UserDetails userDetails) {
+        Optional<User> userOpt = userService.findByUsername(userDetails.getUsername());
+        Optional<ChatSession> sessionOpt = chatService.getSessionById(sessionId);
+        if (userOpt.isEmpty() || sessionOpt.isEmpty()) {
+            return false;
         }
         
-        List<ChatMessage> messages = chatService.getSessionMessages(sessionId);
-        return ResponseEntity.ok(messages);
+        User user = userOpt.get();
+        ChatSession session = sessionOpt.get();
+        return session.getCustomer().getId().equals(user.getId()) ||
+               (session.getAgent() != null && session.getAgent().getId().equals(user.getId())) ||
+               user.getRole() == User.Role.ADMIN;
     }
     
     /**
@@ -135,7 +199,8 @@ public class ChatApiController {
     }
     
     /**
-     * Get waiting students queue (agents only)
+     * Get waiting students queue (agents only).
+     * Tagged with an ETag so unchanged polls get 304 Not Modified.
      */
     @GetMapping("/queue")
     public ResponseEntity<Map<String, Object>> getQueue(@AuthenticationPrincipal UserDetails userDetails) {
@@ -144,25 +209,30 @@ public class ChatApiController {
             return ResponseEntity.status(403).build();
         }
         
+        QueueSnapshot queue = chatService.getQueueSnapshot();
         Map<String, Object> queueData = new HashMap<>();
-        queueData.put("queueSize", chatService.getQueueSize());
-        queueData.put("waitingStudents", chatService.getWaitingStudents());
+        int remainingCapacity = chatService.getRemainingCapacity(userOpt.get());
+        queueData.put("remainingCapacity", remainingCapacity);
+        queueData.put("canAccept", remainingCapacity > 0);
+        queueData.put("version", chatService.getQueueVersion());
+        queueData.put("queueSize", queue.size());
+        queueData.put("waitingStudents", queue.waitingStudents());
         
-        return ResponseEntity.ok(queueData);
+        return withQueueEtag(queueData, queue);
     }
     
     /**
      * Get active sessions for agent (agents only)
      */
     @GetMapping("/agent/sessions")
-    public ResponseEntity<List<ChatSession>> getAgentSessions(@AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<List<ActiveSession>> getAgentSessions(@AuthenticationPrincipal UserDetails userDetails) {
         Optional<User> userOpt = userService.findByUsername(userDetails.getUsername());
         if (userOpt.isEmpty() || userOpt.get().getRole() != User.Role.SUPPORT_AGENT) {
             return ResponseEntity.status(403).build();
         }
         
         User agent = userOpt.get();
-        List<ChatSession> activeSessions = chatService.getActiveSessionsForAgent(agent);
+        List<ActiveSession> activeSessions = chatService.getActiveSessionsForAgent(agent);
         
         return ResponseEntity.ok(activeSessions);
     }
@@ -187,4 +257,23 @@ public class ChatApiController {
         List<ChatSession> history = chatService.getAllChatHistory(studentName, agentName, status, startDate, endDate);
         return ResponseEntity.ok(history);
     }
+    
+    /**
+     * Build a 200 response whose ETag combines the queue snapshot version with the
+     * small per-user fields. The student list is covered by the version, so it is
+     * never hashed. Spring answers a matching If-None-Match with 304 and no body.
+     */
+    private ResponseEntity<Map<String, Object>> withQueueEtag(Map<String, Object> body, QueueSnapshot queue) {
+        int fieldsHash = 0;
+        for (Map.Entry<String, Object> field : body.entrySet()) {
+            if (!"waitingStudents".equals(field.getKey())) {
+                fieldsHash += field.hashCode();
+            }
+        }
+        String etag = "\"" + Long.toHexString(queue.version()) + "-" + Integer.toHexString(fieldsHash) + "\"";
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .body(body);
+    }
 }
@@ -1,20 +1,36 @@
 package com.cusservice.bsit.controller;
 
+import com.cusservice.bsit.dto.CallSignal;
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import com.cusservice.bsit.dto.QueueSnapshot;
 import com.cusservice.bsit.model.ChatMessage;
 import com.cusservice.bsit.model.ChatSession;
 import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.service.ActiveSession;
+import com.cusservice.bsit.service.AttachmentStore;
+import com.cusservice.bsit.service.ChatDomainEvent;
+import com.cusservice.bsit.service.ChatNotificationService;
+import com.cusservice.bsit.service.ChatPrincipal;
 import com.cusservice.bsit.service.ChatService;
+import com.cusservice.bsit.service.MessageReplayBuffer;
+import com.cusservice.bsit.service.OutboundFanout;
+import com.cusservice.bsit.service.PresenceService;
+import com.cusservice.bsit.service.QueueAdmissionService;
+import com.cusservice.bsit.service.RecentMessageIds;
 import com.cusservice.bsit.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Controller
 @RequiredArgsConstructor
@@ -22,57 +38,96 @@ public class ChatController {
     
     private final ChatService chatService;
     private final UserService userService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatNotificationService notificationService;
+    private final QueueAdmissionService admissionService;
+    private final AttachmentStore attachmentStore;
+    private final MessageReplayBuffer messageReplayBuffer;
+    private final RecentMessageIds recentMessageIds;
+    private final OutboundFanout fanout;
+    private final PresenceService presenceService;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Student starts a chat session - joins the queue
      */
     @MessageMapping("/chat/start")
-    public void startChat(@Payload Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor) {
+    public void startChat(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("==========================================");
             System.out.println("RECEIVED /chat/start message");
             System.out.println("Payload: " + payload);
             System.out.println("==========================================");
             
-            String username = (String) payload.get("username");
+            ChatPrincipal user = (ChatPrincipal) principal;
+            String username = user.getName();
             System.out.println("Student " + username + " requesting chat");
             
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (userOpt.isEmpty()) {
-                System.out.println("ERROR: User not found - " + username);
-                sendError(username, "User not found");
+            // A student who already has a chat (second tab, reconnect, status fallback)
+            // gets it back; it is looked up in memory so admission still runs first
+            Optional<ActiveSession> activeInMemory = chatService.findActiveSessionInMemory(username);
+            if (activeInMemory.isPresent()) {
+                System.out.println("Student already has active session: " + activeInMemory.get().sessionId());
+                notificationService.sendSessionInfo(username, activeInMemory.get(), "reconnected");
                 return;
             }
             
-            User student = userOpt.get();
-            System.out.println("Found user: " + student.getFullName() + " (ID: " + student.getId() + ")");
+            Optional<Long> queued = chatService.findQueuedSession(user.id());
+            if (queued.isPresent()) {
+                System.out.println("Student already in queue: " + queued.get());
+                int position = chatService.getQueuePosition(queued.get());
+                notificationService.sendQueuePosition(username, queued.get(), position, chatService.getQueueSize());
+                return;
+            }
+            
+            // Turn away floods and overflow before any database work
+            switch (admissionService.admit(username)) {
+                case RATE_LIMITED -> {
+                    notificationService.sendError(username, "Too many chat requests. Please wait a moment.");
+                    return;
+                }
+                case QUEUE_FULL -> {
+                    notificationService.sendQueueFull(username, admissionService.getRetryAfterSeconds());
+                    return;
+                }
+                case CALLBACK_SCHEDULED -> {
+                    notificationService.sendCallbackScheduled(username);
+                    return;
+                }
+                case ADMITTED -> { }
+            }
             
-            // Check if student already has active or waiting session
-            Optional<ChatSession> existingActive = chatService.getActiveSessionForStudent(student);
+            // Chats the in-memory state does not know about (e.g. started on another node)
+            User reference = user.toReference();
+            Optional<ChatSession> existingActive = chatService.getActiveSessionForStudent(reference);
             if (existingActive.isPresent()) {
                 System.out.println("Student already has active session: " + existingActive.get().getId());
-                sendSessionInfo(student.getUsername(), existingActive.get(), "reconnected");
+                notificationService.sendSessionInfo(username, existingActive.get(), "reconnected");
                 return;
             }
             
-            Optional<ChatSession> existingWaiting = chatService.getWaitingSessionForStudent(student);
+            Optional<ChatSession> existingWaiting = chatService.getWaitingSessionForStudent(reference);
             if (existingWaiting.isPresent()) {
                 System.out.println("Student already in queue: " + existingWaiting.get().getId());
                 int position = chatService.getQueuePosition(existingWaiting.get().getId());
-                sendQueuePosition(student.getUsername(), existingWaiting.get().getId(), position);
+                notificationService.sendQueuePosition(username, existingWaiting.get().getId(), position, chatService.getQueueSize());
                 return;
             }
             
+            // Loaded once per new chat: the queue entry needs the student number and email
+            Optional<User> userOpt = userService.findById(user.id());
+            if (userOpt.isEmpty()) {
+                System.out.println("ERROR: User not found - " + username);
+                notificationService.sendError(username, "User not found");
+                return;
+            }
+            
+            User student = userOpt.get();
+            System.out.println("Found user: " + student.getFullName() + " (ID: " + student.getId() + ")");
+            
             // Create new chat session
             System.out.println("Creating new chat session for student: " + student.getUsername());
+            // The student gets their queue position once the session is committed
             ChatSession session = chatService.createChatSession(student);
-            int position = chatService.getQueuePosition(session.getId());
-            
-            System.out.println("Session created successfully - ID: " + session.getId() + ", Position: " + position);
-            
-            // Send queue position to student
-            sendQueuePosition(student.getUsername(), session.getId(), position);
             
             System.out.println("Chat session created with ID: " + session.getId());
             
@@ -86,33 +141,31 @@ public class ChatController {
      * Agent accepts a student from the queue
      */
     @MessageMapping("/chat/accept")
-    public void acceptChat(@Payload Map<String, Object> payload) {
+    public void acceptChat(@Payload Map<String, Object> payload, Principal principal) {
+        ChatPrincipal user = (ChatPrincipal) principal;
+        String agentUsername = user.getName();
         try {
-            String agentUsername = (String) payload.get("agentUsername");
             Long sessionId = Long.valueOf(payload.get("sessionId").toString());
             
             System.out.println("Agent " + agentUsername + " accepting session " + sessionId);
             
-            Optional<User> agentOpt = userService.findByUsername(agentUsername);
-            if (agentOpt.isEmpty()) {
-                System.err.println("Agent not found: " + agentUsername);
+            if (!user.isAgent()) {
+                notificationService.sendError(agentUsername, "Only support agents can accept chats");
                 return;
             }
             
-            User agent = agentOpt.get();
-            
-            // Assign agent to session
-            ChatSession session = chatService.assignAgentToSession(sessionId, agent);
+            User agent = user.toReference();
             
-            // Send session info to both student and agent
-            sendSessionInfo(session.getCustomer().getUsername(), session, "active");
-            sendSessionInfo(agent.getUsername(), session, "active");
+            // Assign agent to session; both sides get the session info after it commits
+            chatService.assignAgentToSession(sessionId, agent);
             
             System.out.println("Agent " + agentUsername + " successfully assigned to session " + sessionId);
             
         } catch (Exception e) {
             System.err.println("Error accepting chat: " + e.getMessage());
             e.printStackTrace();
+            // Tell the agent why (e.g. already taken, or they are at capacity)
+            notificationService.sendError(agentUsername, e.getMessage());
         }
     }
     
@@ -120,88 +173,238 @@ public class ChatController {
      * Send a message in a chat session
      */
     @MessageMapping("/chat/message")
-    public void sendMessage(@Payload Map<String, Object> payload) {
+    public void sendMessage(@Payload Map<String, Object> payload, Principal principal) {
         try {
+            ChatPrincipal user = (ChatPrincipal) principal;
             Long sessionId = Long.valueOf(payload.get("sessionId").toString());
-            String senderUsername = (String) payload.get("senderUsername");
+            String senderUsername = user.getName();
             String content = (String) payload.get("content");
             String typeStr = payload.get("type") != null ? (String) payload.get("type") : "TEXT";
+            String clientMessageId = clientMessageIdOf(payload);
             
-            Optional<User> senderOpt = userService.findByUsername(senderUsername);
-            if (senderOpt.isEmpty()) {
-                System.err.println("Sender not found: " + senderUsername);
+            ChatMessage.MessageType messageType = messageTypeOf(typeStr);
+            
+            // Images and files must be uploaded first; the message only carries the reference
+            boolean attachment = messageType == ChatMessage.MessageType.IMAGE || messageType == ChatMessage.MessageType.FILE;
+            if (attachment && !attachmentStore.isReference(content)) {
+                notificationService.sendError(senderUsername, "Attachment not found. Please upload it again.");
                 return;
             }
             
-            User sender = senderOpt.get();
+            // Only the chat's own participants may post to it; checked before the
+            // client ID is reserved so a rejected sender cannot block a real message
+            Optional<ActiveSession> activeOpt = chatService.getActiveSession(sessionId);
+            ActiveSession active = null;
+            ActiveSession.Participant participant = null;
+            ChatSession session = null;
+            if (activeOpt.isPresent()) {
+                // Active chat: sender and recipients come from memory, only the insert hits the database
+                active = activeOpt.get();
+                participant = active.participant(senderUsername).orElse(null);
+                if (participant == null) {
+                    System.err.println("Sender " + senderUsername + " is not part of session " + sessionId);
+                    return;
+                }
+            } else {
+                session = chatService.getSessionById(sessionId).orElse(null);
+                if (session == null) {
+                    System.err.println("Session not found: " + sessionId);
+                    return;
+                }
+                boolean isCustomer = session.getCustomer().getId().equals(user.id());
+                boolean isAgent = session.getAgent() != null && session.getAgent().getId().equals(user.id());
+                if (!isCustomer && !isAgent) {
+                    System.err.println("Sender " + senderUsername + " is not part of session " + sessionId);
+                    return;
+                }
+            }
             
-            // Parse message type
-            ChatMessage.MessageType messageType;
-            try {
-                messageType = ChatMessage.MessageType.valueOf(typeStr);
-            } catch (IllegalArgumentException e) {
-                messageType = ChatMessage.MessageType.TEXT;
+            // A retry of a message we already have: acknowledge it again, nothing else
+            if (clientMessageId != null && !recentMessageIds.reserve(sessionId, clientMessageId)) {
+                recentMessageIds.completed(sessionId, clientMessageId)
+                        .ifPresent(frame -> fanout.sendToUser(senderUsername, "/queue/messages", frame));
+                return;
             }
             
-            ChatMessage message = chatService.addMessage(sessionId, sender, content, messageType);
+            ChatMessage message;
+            String senderName;
+            String customerUsername;
+            String agentUsername;
+            
+            if (active != null) {
+                ActiveSession chat = active;
+                ActiveSession.Participant sender = participant;
+                message = saveMessage(() -> chatService.addMessage(chat, sender, content, messageType, clientMessageId),
+                        sessionId, clientMessageId, senderUsername);
+                if (message == null) {
+                    return;
+                }
+                senderName = sender.fullName();
+                customerUsername = active.customer().username();
+                agentUsername = active.agent().username();
+            } else {
+                User sender = user.toReference();
+                message = saveMessage(() -> chatService.addMessage(sessionId, sender, content, messageType, clientMessageId),
+                        sessionId, clientMessageId, senderUsername);
+                if (message == null) {
+                    return;
+                }
+                senderName = sender.getFullName();
+                customerUsername = session.getCustomer().getUsername();
+                agentUsername = session.getAgent() != null ? session.getAgent().getUsername() : null;
+            }
             
-            // Get session to find recipient
-            Optional<ChatSession> sessionOpt = chatService.getSessionById(sessionId);
-            if (sessionOpt.isEmpty()) {
-                System.err.println("Session not found: " + sessionId);
-                return;
+            // Send message to both participants (the agent only if assigned)
+            ChatMessageFrame frame = frameOf(message, senderUsername, senderName);
+            messageReplayBuffer.record(frame);
+            if (clientMessageId != null) {
+                recentMessageIds.complete(sessionId, clientMessageId, frame);
             }
+            eventPublisher.publishEvent(new ChatDomainEvent.MessagePosted(sessionId, frame, customerUsername, agentUsername));
             
-            ChatSession session = sessionOpt.get();
+        } catch (Exception e) {
+            System.err.println("Error sending message: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Save a message. If the unique index shows the client already sent it
+     * (a retry older than the in-memory ID window), the stored copy is
+     * acknowledged to the sender and null is returned.
+     */
+    private ChatMessage saveMessage(Supplier<ChatMessage> save, Long sessionId, String clientMessageId, String senderUsername) {
+        try {
+            return save.get();
+        } catch (RuntimeException e) {
+            if (clientMessageId == null) {
+                throw e;
+            }
+            if (!isDuplicateKey(e)) {
+                recentMessageIds.release(sessionId, clientMessageId);
+                throw e;
+            }
+            chatService.findMessageByClientId(sessionId, clientMessageId).ifPresent(existing -> {
+                ChatMessageFrame frame = frameOf(existing, senderUsername, existing.getSender().getFullName());
+                recentMessageIds.complete(sessionId, clientMessageId, frame);
+                fanout.sendToUser(senderUsername, "/queue/messages", frame);
+            });
+            return null;
+        }
+    }
+    
+    private static boolean isDuplicateKey(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataIntegrityViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static ChatMessageFrame frameOf(ChatMessage message, String senderUsername, String senderName) {
+        return new ChatMessageFrame(
+            message.getSession().getId(),
+            message.getSeq(),
+            message.getId(),
+            message.getClientMessageId(),
+            message.getContent(),
+            senderUsername,
+            senderName,
+            message.getSentAt().toString(),
+            message.getType().toString()
+        );
+    }
+    
+    private static ChatMessage.MessageType messageTypeOf(String type) {
+        try {
+            return ChatMessage.MessageType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            return ChatMessage.MessageType.TEXT;
+        }
+    }
+    
+    // Client IDs are short opaque strings; anything else is ignored
+    private static String clientMessageIdOf(Map<String, Object> payload) {
+        Object value = payload.get("clientMessageId");
+        if (!(value instanceof String id) || id.isBlank() || id.length() > 64) {
+            return null;
+        }
+        return id;
+    }
+    
+    /**
+     * Resume a chat after a dropped connection: replay the messages after the
+     * client's last sequence number, or ask it to reload them if they are gone
+     */
+    @MessageMapping("/chat/resume")
+    public void resumeChat(@Payload Map<String, Object> payload, Principal principal) {
+        try {
+            String username = principal.getName();
+            Long sessionId = Long.valueOf(payload.get("sessionId").toString());
+            long lastSeq = payload.get("lastSeq") != null ? Long.parseLong(payload.get("lastSeq").toString()) : 0;
             
-            // Send message to both participants
-            Map<String, Object> messageData = new HashMap<>();
-            messageData.put("sessionId", sessionId);
-            messageData.put("messageId", message.getId());
-            messageData.put("content", message.getContent());
-            messageData.put("senderUsername", sender.getUsername());
-            messageData.put("senderName", sender.getFullName());
-            messageData.put("timestamp", message.getSentAt().toString());
-            messageData.put("type", message.getType().toString());
-            
-            // Send to student
-            messagingTemplate.convertAndSendToUser(
-                session.getCustomer().getUsername(),
-                "/queue/messages",
-                messageData
-            );
+            Optional<ActiveSession> activeOpt = chatService.getActiveSession(sessionId);
+            if (activeOpt.isEmpty() || activeOpt.get().participant(username).isEmpty()) {
+                // Ended or not theirs; a full reload shows whatever state the chat is in
+                notificationService.sendResyncRequired(username, sessionId);
+                return;
+            }
             
-            // Send to agent if assigned
-            if (session.getAgent() != null) {
-                messagingTemplate.convertAndSendToUser(
-                    session.getAgent().getUsername(),
-                    "/queue/messages",
-                    messageData
-                );
+            Optional<List<ChatMessageFrame>> missed = messageReplayBuffer.since(sessionId, lastSeq);
+            if (missed.isEmpty()) {
+                notificationService.sendResyncRequired(username, sessionId);
+                return;
+            }
+            for (ChatMessageFrame frame : missed.get()) {
+                fanout.sendToUser(username, "/queue/messages", frame);
             }
+            System.out.println("Replayed " + missed.get().size() + " messages of session " + sessionId + " to " + username);
             
         } catch (Exception e) {
-            System.err.println("Error sending message: " + e.getMessage());
+            System.err.println("Error resuming chat: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
     /**
-     * End a chat session
+     * Typing reports; the presence service coalesces them before anything is sent
      */
-    @MessageMapping("/chat/end")
-    public void endChat(@Payload Map<String, Object> payload) {
+    @MessageMapping("/chat/typing")
+    public void typing(@Payload Map<String, Object> payload, Principal principal) {
         try {
+            String username = principal.getName();
             Long sessionId = Long.valueOf(payload.get("sessionId").toString());
-            String username = (String) payload.get("username");
+            boolean typing = Boolean.parseBoolean(String.valueOf(payload.get("typing")));
             
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (userOpt.isEmpty()) {
-                System.err.println("User not found: " + username);
+            Optional<ActiveSession> activeOpt = chatService.getActiveSession(sessionId);
+            if (activeOpt.isEmpty() || activeOpt.get().participant(username).isEmpty()) {
                 return;
             }
+            presenceService.setTyping(sessionId, username, typing);
             
-            User user = userOpt.get();
+        } catch (Exception e) {
+            System.err.println("Error handling typing report: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * The client's page went to the background ("away") or came back ("online")
+     */
+    @MessageMapping("/presence")
+    public void updatePresence(@Payload Map<String, Object> payload, Principal principal) {
+        presenceService.setAway(principal.getName(), "away".equalsIgnoreCase(String.valueOf(payload.get("status"))));
+    }
+    
+    /**
+     * End a chat session
+     */
+    @MessageMapping("/chat/end")
+    public void endChat(@Payload Map<String, Object> payload, Principal principal) {
+        try {
+            ChatPrincipal user = (ChatPrincipal) principal;
+            Long sessionId = Long.valueOf(payload.get("sessionId").toString());
+            String username = user.getName();
             
             // Get session before closing
             Optional<ChatSession> sessionOpt = chatService.getSessionById(sessionId);
@@ -212,28 +415,17 @@ public class ChatController {
             
             ChatSession session = sessionOpt.get();
             
-            // End the session
-            chatService.endChatSession(sessionId, user);
-            
-            // Notify both participants
-            Map<String, Object> notification = new HashMap<>();
-            notification.put("type", "SESSION_ENDED");
-            notification.put("sessionId", sessionId);
-            
-            messagingTemplate.convertAndSendToUser(
-                session.getCustomer().getUsername(),
-                "/queue/notifications",
-                notification
-            );
-            
-            if (session.getAgent() != null) {
-                messagingTemplate.convertAndSendToUser(
-                    session.getAgent().getUsername(),
-                    "/queue/notifications",
-                    notification
-                );
+            // Only the chat's own student or agent may close it
+            boolean participant = session.getCustomer().getId().equals(user.id())
+                    || (session.getAgent() != null && session.getAgent().getId().equals(user.id()));
+            if (!participant) {
+                System.err.println(username + " tried to end session " + sessionId + " they are not part of");
+                return;
             }
             
+            // End the session; both participants are notified after it commits
+            chatService.endChatSession(sessionId, user.toReference());
+            
             System.out.println("Chat session " + sessionId + " ended by " + username);
             
         } catch (Exception e) {
@@ -246,19 +438,16 @@ public class ChatController {
      * Get current queue status
      */
     @MessageMapping("/chat/queue-status")
-    public void getQueueStatus(@Payload Map<String, Object> payload) {
+    public void getQueueStatus(@Payload Map<String, Object> payload, Principal principal) {
         try {
-            String username = (String) payload.get("username");
+            String username = principal.getName();
             
+            QueueSnapshot queue = chatService.getQueueSnapshot();
             Map<String, Object> status = new HashMap<>();
-            status.put("queueSize", chatService.getQueueSize());
-            status.put("waitingStudents", chatService.getWaitingStudents());
+            status.put("queueSize", queue.size());
+            status.put("waitingStudents", queue.waitingStudents());
             
-            messagingTemplate.convertAndSendToUser(
-                username,
-                "/queue/status",
-                status
-            );
+            fanout.sendToUser(username, "/queue/status", status);
             
         } catch (Exception e) {
             System.err.println("Error getting queue status: " + e.getMessage());
@@ -266,82 +455,31 @@ public class ChatController {
         }
     }
     
-    // Helper methods
-    
-    private void sendQueuePosition(String username, Long sessionId, int position) {
-        Map<String, Object> queueInfo = new HashMap<>();
-        queueInfo.put("type", "QUEUE_POSITION");
-        queueInfo.put("sessionId", sessionId);
-        queueInfo.put("position", position);
-        queueInfo.put("queueSize", chatService.getQueueSize());
-        
-        messagingTemplate.convertAndSendToUser(
-            username,
-            "/queue/notifications",
-            queueInfo
-        );
-    }
-    
-    private void sendSessionInfo(String username, ChatSession session, String status) {
-        Map<String, Object> sessionInfo = new HashMap<>();
-        sessionInfo.put("type", "SESSION_INFO");
-        sessionInfo.put("sessionId", session.getId());
-        sessionInfo.put("status", status);
-        sessionInfo.put("customerName", session.getCustomer().getFullName());
-        sessionInfo.put("customerId", session.getCustomer().getStudentId());
-        if (session.getAgent() != null) {
-            sessionInfo.put("agentName", session.getAgent().getFullName());
-            sessionInfo.put("agentUsername", session.getAgent().getUsername());
-        }
-        
-        messagingTemplate.convertAndSendToUser(
-            username,
-            "/queue/notifications",
-            sessionInfo
-        );
-    }
-    
-    private void sendError(String username, String errorMessage) {
-        Map<String, Object> error = new HashMap<>();
-        error.put("type", "ERROR");
-        error.put("message", errorMessage);
-        
-        messagingTemplate.convertAndSendToUser(
-            username,
-            "/queue/notifications",
-            error
-        );
-    }
-    
     // ==================== VOICE CALL HANDLERS ====================
     
     /**
      * Handle call request from student/teacher to agent
      */
     @MessageMapping("/call/request")
-    public void handleCallRequest(@Payload Map<String, Object> payload) {
+    public void handleCallRequest(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("📞 CALL REQUEST received: " + payload);
             
-            String callerUsername = (String) payload.get("from");
+            String callerUsername = principal.getName();
             String receiverUsername = (String) payload.get("to");
             Long sessionId = payload.get("sessionId") != null ? 
                             Long.valueOf(payload.get("sessionId").toString()) : null;
             
             // Forward to receiver
-            Map<String, Object> callRequest = new HashMap<>();
-            callRequest.put("type", "CALL_REQUEST");
-            callRequest.put("callId", payload.get("callId"));
-            callRequest.put("from", callerUsername);
-            callRequest.put("fromName", payload.get("fromName"));
-            callRequest.put("sessionId", sessionId);
-            
-            messagingTemplate.convertAndSendToUser(
-                receiverUsername,
-                "/queue/call",
-                callRequest
+            CallSignal callRequest = new CallSignal.Request(
+                payload.get("callId"),
+                callerUsername,
+                ((ChatPrincipal) principal).fullName(),
+                sessionId
             );
             
+            fanout.sendToUser(receiverUsername, "/queue/call", callRequest);
+            
             System.out.println("📞 Call request forwarded to: " + receiverUsername);
         } catch (Exception e) {
             System.err.println("Error handling call request: " + e.getMessage());
@@ -353,24 +491,17 @@ public class ChatController {
      * Handle call acceptance
      */
     @MessageMapping("/call/accept")
-    public void handleCallAccept(@Payload Map<String, Object> payload) {
+    public void handleCallAccept(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("✅ CALL ACCEPT received: " + payload);
             
-            String accepterUsername = (String) payload.get("from");
+            String accepterUsername = principal.getName();
             String callerUsername = (String) payload.get("to");
             
             // Forward acceptance to caller
-            Map<String, Object> callAccept = new HashMap<>();
-            callAccept.put("type", "CALL_ACCEPT");
-            callAccept.put("callId", payload.get("callId"));
-            callAccept.put("from", accepterUsername);
+            CallSignal callAccept = new CallSignal.Accept(payload.get("callId"), accepterUsername);
             
-            messagingTemplate.convertAndSendToUser(
-                callerUsername,
-                "/queue/call",
-                callAccept
-            );
+            fanout.sendToUser(callerUsername, "/queue/call", callAccept);
             
             System.out.println("✅ Call acceptance forwarded to: " + callerUsername);
         } catch (Exception e) {
@@ -383,25 +514,17 @@ public class ChatController {
      * Handle call rejection
      */
     @MessageMapping("/call/reject")
-    public void handleCallReject(@Payload Map<String, Object> payload) {
+    public void handleCallReject(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("❌ CALL REJECT received: " + payload);
             
-            String rejecterUsername = (String) payload.get("from");
+            String rejecterUsername = principal.getName();
             String callerUsername = (String) payload.get("to");
             
             // Forward rejection to caller
-            Map<String, Object> callReject = new HashMap<>();
-            callReject.put("type", "CALL_REJECT");
-            callReject.put("callId", payload.get("callId"));
-            callReject.put("from", rejecterUsername);
-            callReject.put("reason", payload.get("reason"));
+            CallSignal callReject = new CallSignal.Reject(payload.get("callId"), rejecterUsername, payload.get("reason"));
             
-            messagingTemplate.convertAndSendToUser(
-                callerUsername,
-                "/queue/call",
-                callReject
-            );
+            fanout.sendToUser(callerUsername, "/queue/call", callReject);
             
             System.out.println("❌ Call rejection forwarded to: " + callerUsername);
         } catch (Exception e) {
@@ -414,24 +537,17 @@ public class ChatController {
      * Handle call end
      */
     @MessageMapping("/call/end")
-    public void handleCallEnd(@Payload Map<String, Object> payload) {
+    public void handleCallEnd(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("📴 CALL END received: " + payload);
             
-            String senderUsername = (String) payload.get("from");
+            String senderUsername = principal.getName();
             String otherUsername = (String) payload.get("to");
             
             // Forward call end to other party
-            Map<String, Object> callEnd = new HashMap<>();
-            callEnd.put("type", "CALL_END");
-            callEnd.put("callId", payload.get("callId"));
-            callEnd.put("from", senderUsername);
-            
-            messagingTemplate.convertAndSendToUser(
-                otherUsername,
-                "/queue/call",
-                callEnd
-            );
+            CallSignal callEnd = new CallSignal.End(payload.get("callId"), senderUsername);
+            
+            fanout.sendToUser(otherUsername, "/queue/call", callEnd);
             
             System.out.println("📴 Call end forwarded to: " + otherUsername);
         } catch (Exception e) {
@@ -444,25 +560,17 @@ public class ChatController {
      * Handle WebRTC offer (SDP)
      */
     @MessageMapping("/call/offer")
-    public void handleWebRTCOffer(@Payload Map<String, Object> payload) {
+    public void handleWebRTCOffer(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("🎯 WebRTC OFFER received");
             
-            String senderUsername = (String) payload.get("from");
+            String senderUsername = principal.getName();
             String receiverUsername = (String) payload.get("to");
             
             // Forward offer to receiver
-            Map<String, Object> offer = new HashMap<>();
-            offer.put("type", "WEBRTC_OFFER");
-            offer.put("callId", payload.get("callId"));
-            offer.put("from", senderUsername);
-            offer.put("sdp", payload.get("sdp"));
-            
-            messagingTemplate.convertAndSendToUser(
-                receiverUsername,
-                "/queue/call",
-                offer
-            );
+            CallSignal offer = new CallSignal.Offer(payload.get("callId"), senderUsername, payload.get("sdp"));
+            
+            fanout.sendToUser(receiverUsername, "/queue/call", offer);
             
             System.out.println("🎯 WebRTC offer forwarded to: " + receiverUsername);
         } catch (Exception e) {
@@ -475,25 +583,17 @@ public class ChatController {
      * Handle WebRTC answer (SDP)
      */
     @MessageMapping("/call/answer")
-    public void handleWebRTCAnswer(@Payload Map<String, Object> payload) {
+    public void handleWebRTCAnswer(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("🎯 WebRTC ANSWER received");
             
-            String senderUsername = (String) payload.get("from");
+            String senderUsername = principal.getName();
             String receiverUsername = (String) payload.get("to");
             
             // Forward answer to receiver
-            Map<String, Object> answer = new HashMap<>();
-            answer.put("type", "WEBRTC_ANSWER");
-            answer.put("callId", payload.get("callId"));
-            answer.put("from", senderUsername);
-            answer.put("sdp", payload.get("sdp"));
-            
-            messagingTemplate.convertAndSendToUser(
-                receiverUsername,
-                "/queue/call",
-                answer
-            );
+            CallSignal answer = new CallSignal.Answer(payload.get("callId"), senderUsername, payload.get("sdp"));
+            
+            fanout.sendToUser(receiverUsername, "/queue/call", answer);
             
             System.out.println("🎯 WebRTC answer forwarded to: " + receiverUsername);
         } catch (Exception e) {
@@ -506,26 +606,22 @@ public class ChatController {
      * Handle ICE candidate exchange
      */
     @MessageMapping("/call/ice-candidate")
-    public void handleICECandidate(@Payload Map<String, Object> payload) {
+    public void handleICECandidate(@Payload Map<String, Object> payload, Principal principal) {
         try {
             System.out.println("🧊 ICE CANDIDATE received");
             
-            String senderUsername = (String) payload.get("from");
+            String senderUsername = principal.getName();
             String receiverUsername = (String) payload.get("to");
             
             // Forward ICE candidate to receiver
-            Map<String, Object> iceCandidate = new HashMap<>();
-            iceCandidate.put("type", "ICE_CANDIDATE");
-            iceCandidate.put("callId", payload.get("callId"));
-            iceCandidate.put("from", senderUsername);
-            iceCandidate.put("candidate", payload.get("candidate"));
-            
-            messagingTemplate.convertAndSendToUser(
-                receiverUsername,
-                "/queue/call",
-                iceCandidate
+            CallSignal iceCandidate = new CallSignal.IceCandidate(
+                payload.get("callId"),
+                senderUsername,
+                payload.get("candidate")
             );
             
+            fanout.sendToUser(receiverUsername, "/queue/call", iceCandidate);
+            
             System.out.println("🧊 ICE candidate forwarded to: " + receiverUsername);
         } catch (Exception e) {
             System.err.println("Error handling ICE candidate: " + e.getMessage());
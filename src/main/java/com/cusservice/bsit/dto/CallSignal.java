@@ -0,0 +1,42 @@
+package com.cusservice.bsit.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+/**
+ * Voice call signalling relayed to /user/queue/call.
+ * SDP and ICE payloads are passed through untouched.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public sealed interface CallSignal {
+
+    @JsonTypeName("CALL_REQUEST")
+    record Request(Object callId, String from, String fromName, Long sessionId) implements CallSignal {
+    }
+
+    @JsonTypeName("CALL_ACCEPT")
+    record Accept(Object callId, String from) implements CallSignal {
+    }
+
+    @JsonTypeName("CALL_REJECT")
+    record Reject(Object callId, String from, Object reason) implements CallSignal {
+    }
+
+    @JsonTypeName("CALL_END")
+    record End(Object callId, String from) implements CallSignal {
+    }
+
+    @JsonTypeName("WEBRTC_OFFER")
+    record Offer(Object callId, String from, Object sdp) implements CallSignal {
+    }
+
+    @JsonTypeName("WEBRTC_ANSWER")
+    record Answer(Object callId, String from, Object sdp) implements CallSignal {
+    }
+
+    @JsonTypeName("ICE_CANDIDATE")
+    record IceCandidate(Object callId, String from, Object candidate) implements CallSignal {
+    }
+}
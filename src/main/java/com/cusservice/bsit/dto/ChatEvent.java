@@ -0,0 +1,60 @@
+package com.cusservice.bsit.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+/**
+ * Notifications pushed to /user/queue/notifications.
+ * Each record is written with a "type" property taken from its @JsonTypeName,
+ * which is what the chat pages switch on.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public sealed interface ChatEvent {
+
+    @JsonTypeName("QUEUE_POSITION")
+    record QueuePosition(Long sessionId, int position, int queueSize, Long estimatedWaitSeconds) implements ChatEvent {
+    }
+
+    @JsonTypeName("SESSION_INFO")
+    record SessionInfo(Long sessionId, String status, String customerName, String customerId,
+                       String agentName, String agentUsername) implements ChatEvent {
+    }
+
+    @JsonTypeName("AGENT_JOINED")
+    record AgentJoined(Long sessionId, String agentName) implements ChatEvent {
+    }
+
+    @JsonTypeName("SESSION_ENDED")
+    record SessionEnded(Long sessionId) implements ChatEvent {
+    }
+
+    @JsonTypeName("RESYNC_REQUIRED")
+    record ResyncRequired(Long sessionId) implements ChatEvent {
+    }
+
+    @JsonTypeName("TYPING")
+    record Typing(Long sessionId, String username, boolean typing) implements ChatEvent {
+    }
+
+    @JsonTypeName("PRESENCE")
+    record Presence(Long sessionId, String username, String status) implements ChatEvent {
+    }
+
+    @JsonTypeName("QUEUE_FULL")
+    record QueueFull(String message, int retryAfterSeconds) implements ChatEvent {
+    }
+
+    @JsonTypeName("CALLBACK_SCHEDULED")
+    record CallbackScheduled(String message) implements ChatEvent {
+    }
+
+    @JsonTypeName("CALLBACK_READY")
+    record CallbackReady() implements ChatEvent {
+    }
+
+    @JsonTypeName("ERROR")
+    record Error(String message) implements ChatEvent {
+    }
+}
@@ -0,0 +1,10 @@
+package com.cusservice.bsit.dto;
+
+/**
+ * A chat message as delivered to both participants on /user/queue/messages.
+ * seq is the message's position in the session; clients resume from it.
+ * clientMessageId echoes the sender's own ID, which acknowledges the send.
+ */
+public record ChatMessageFrame(Long sessionId, Long seq, Long messageId, String clientMessageId, String content,
+                               String senderUsername, String senderName, String timestamp, String type) {
+}
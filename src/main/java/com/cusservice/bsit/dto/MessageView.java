@@ -0,0 +1,37 @@
+package com.cusservice.bsit.dto;
+
+import com.cusservice.bsit.model.ChatMessage;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight chat history row. Carries only the sender's name fields instead
+ * of the full User and ChatSession graph. Inline (base64) bodies are left out
+ * and replaced by a URL that loads them on demand.
+ */
+public record MessageView(Long id, Long seq, Sender sender, String senderName, String content,
+                          LocalDateTime sentAt, ChatMessage.MessageType type) {
+
+    public record Sender(Long id, String username, String fullName) {
+    }
+
+    /**
+     * Flat constructor used by the JPQL constructor expression
+     */
+    public MessageView(Long id, Long seq, Long senderId, String senderUsername, String senderFullName, String senderName,
+                       String content, LocalDateTime sentAt, ChatMessage.MessageType type) {
+        this(id, seq, senderId != null ? new Sender(senderId, senderUsername, senderFullName) : null,
+                senderName, content, sentAt, type);
+    }
+
+    /**
+     * True if the body was left out of the query because it is stored inline
+     */
+    public boolean hasDeferredContent() {
+        return content == null;
+    }
+
+    public MessageView withContent(String content) {
+        return new MessageView(id, seq, sender, senderName, content, sentAt, type);
+    }
+}
@@ -0,0 +1,14 @@
+package com.cusservice.bsit.dto;
+
+import java.util.List;
+
+/**
+ * Immutable view of the waiting queue. The version changes whenever the
+ * queue contents change, so it can be used to validate cached copies.
+ */
+public record QueueSnapshot(long version, List<QueueStudentDTO> waitingStudents) {
+
+    public int size() {
+        return waitingStudents.size();
+    }
+}
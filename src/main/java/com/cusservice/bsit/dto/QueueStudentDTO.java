@@ -1,6 +1,7 @@
 package com.cusservice.bsit.dto;
 
 import com.cusservice.bsit.model.ChatSession;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,6 +18,9 @@ public class QueueStudentDTO {
     private String studentEmail;
     private LocalDateTime startedAt;
     private String topic;
+    // The student's user ID, for finding their queue entry; not sent to agents
+    @JsonIgnore
+    private Long customerId;
     
     /**
      * Create DTO from ChatSession entity
@@ -29,6 +33,7 @@ public class QueueStudentDTO {
         dto.setStudentEmail(session.getCustomer().getEmail());
         dto.setStartedAt(session.getStartedAt());
         dto.setTopic(session.getTopic());
+        dto.setCustomerId(session.getCustomer().getId());
         return dto;
     }
 }
@@ -0,0 +1,45 @@
+package com.cusservice.bsit.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata for an uploaded file. The ID is the SHA-256 of the content, so
+ * identical uploads share one row and one blob on disk.
+ */
+@Entity
+@Table(name = "attachments")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Attachment {
+    @Id
+    @Column(length = 64)
+    private String id;
+    
+    @Column(nullable = false)
+    private String contentType;
+    
+    @Column(nullable = false)
+    private long size;
+    
+    private String originalName;
+    
+    @ManyToOne
+    @JoinColumn(name = "uploaded_by")
+    private User uploadedBy;
+    
+    @Column(nullable = false)
+    private LocalDateTime uploadedAt = LocalDateTime.now();
+    
+    /**
+     * Raster images that are safe to show inline (SVG can carry script)
+     */
+    public boolean isImage() {
+        return contentType.startsWith("image/") && !contentType.contains("svg");
+    }
+}
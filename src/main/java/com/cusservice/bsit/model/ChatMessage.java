@@ -8,7 +8,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+    // Keyset pagination of a session's history
+    @Index(name = "idx_chat_messages_session_sent", columnList = "session_id, sent_at, id"),
+    // A retried send can never be stored twice
+    @Index(name = "uk_chat_messages_client_id", columnList = "session_id, client_message_id", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -54,6 +59,13 @@ public class ChatMessage {
     
     private String senderName;
     
+    // Position in the session, used to resume a dropped connection
+    private Long seq;
+    
+    // ID generated by the sending client, for deduplicating retries
+    @Column(length = 64)
+    private String clientMessageId;
+    
     public enum MessageType {
         TEXT,
         SYSTEM,
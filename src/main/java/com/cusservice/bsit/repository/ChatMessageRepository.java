@@ -1,14 +1,58 @@
 package com.cusservice.bsit.repository;
 
+import com.cusservice.bsit.dto.MessageView;
 import com.cusservice.bsit.model.ChatMessage;
 import com.cusservice.bsit.model.ChatSession;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
+    
+    // History rows without the entity graph; inline base64 bodies are left out
+    String MESSAGE_VIEW = "SELECT new com.cusservice.bsit.dto.MessageView(m.id, m.seq, s.id, s.username, s.fullName, " +
+            "m.senderName, CASE WHEN m.content LIKE 'data:%' THEN NULL ELSE m.content END, m.sentAt, m.type) " +
+            "FROM ChatMessage m LEFT JOIN m.sender s WHERE m.session.id = :sessionId ";
+    
     List<ChatMessage> findBySessionOrderBySentAtAsc(ChatSession session);
     List<ChatMessage> findBySessionIdOrderBySentAtAsc(Long sessionId);
+    
+    // Newest messages of a session, newest first
+    @Query(MESSAGE_VIEW + "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findLatestViews(@Param("sessionId") Long sessionId, Limit limit);
+    
+    // Messages older than the cursor, newest first
+    @Query(MESSAGE_VIEW + "AND (m.sentAt < :sentAt OR (m.sentAt = :sentAt AND m.id < :id)) " +
+           "ORDER BY m.sentAt DESC, m.id DESC")
+    List<MessageView> findViewsBefore(@Param("sessionId") Long sessionId,
+                                      @Param("sentAt") LocalDateTime sentAt,
+                                      @Param("id") Long id,
+                                      Limit limit);
+    
+    // Messages newer than the cursor, oldest first
+    @Query(MESSAGE_VIEW + "AND (m.sentAt > :sentAt OR (m.sentAt = :sentAt AND m.id > :id)) " +
+           "ORDER BY m.sentAt ASC, m.id ASC")
+    List<MessageView> findViewsAfter(@Param("sessionId") Long sessionId,
+                                     @Param("sentAt") LocalDateTime sentAt,
+                                     @Param("id") Long id,
+                                     Limit limit);
+    
+    // Position of a cursor message, without loading its content
+    @Query("SELECT m.sentAt FROM ChatMessage m WHERE m.id = :id AND m.session.id = :sessionId")
+    Optional<LocalDateTime> findSentAt(@Param("sessionId") Long sessionId, @Param("id") Long id);
+    
+    Optional<ChatMessage> findBySessionIdAndClientMessageId(Long sessionId, String clientMessageId);
+    
+    @Query("SELECT MAX(m.seq) FROM ChatMessage m WHERE m.session.id = :sessionId")
+    Optional<Long> findMaxSeq(@Param("sessionId") Long sessionId);
+    
+    @Query("SELECT m.content FROM ChatMessage m WHERE m.id = :id AND m.session.id = :sessionId")
+    Optional<String> findContent(@Param("sessionId") Long sessionId, @Param("id") Long id);
 }
@@ -1,8 +1,13 @@
 package com.cusservice.bsit.repository;
 
+import com.cusservice.bsit.dto.QueueStudentDTO;
 import com.cusservice.bsit.model.ChatSession;
 import com.cusservice.bsit.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,4 +21,41 @@ public interface ChatSessionRepository extends JpaRepository<ChatSession, Long>
     List<ChatSession> findByCustomerAndStatus(User customer, ChatSession.SessionStatus status);
     List<ChatSession> findByAgentAndStatus(User agent, ChatSession.SessionStatus status);
     List<ChatSession> findAllByOrderByStartedAtDesc();
+    
+    // Queue entries projected straight from the session and customer columns (no entity graphs)
+    @Query("SELECT new com.cusservice.bsit.dto.QueueStudentDTO(s.id, c.fullName, c.studentId, c.email, s.startedAt, s.topic, c.id) " +
+           "FROM ChatSession s JOIN s.customer c WHERE s.status = :status ORDER BY s.startedAt ASC, s.id ASC")
+    List<QueueStudentDTO> findQueueEntriesByStatusOrderByStartedAtAsc(@Param("status") ChatSession.SessionStatus status);
+    
+    @Query("SELECT new com.cusservice.bsit.dto.QueueStudentDTO(s.id, c.fullName, c.studentId, c.email, s.startedAt, s.topic, c.id) " +
+           "FROM ChatSession s JOIN s.customer c WHERE s.status = :status ORDER BY s.startedAt ASC, s.id ASC")
+    List<QueueStudentDTO> findQueueEntriesByStatus(@Param("status") ChatSession.SessionStatus status, Pageable pageable);
+    
+    long countByStatus(ChatSession.SessionStatus status);
+    
+    @Query("SELECT s.id FROM ChatSession s WHERE s.customer.id = :customerId AND s.status = :status")
+    List<Long> findIdsByCustomerIdAndStatus(@Param("customerId") Long customerId, @Param("status") ChatSession.SessionStatus status);
+    
+    boolean existsByIdAndStatus(Long id, ChatSession.SessionStatus status);
+    
+    // Atomically hand a session to an agent; returns 0 if it was no longer in the expected status
+    @Modifying
+    @Query("UPDATE ChatSession s SET s.agent = :agent, s.status = :newStatus WHERE s.id = :id AND s.status = :expectedStatus")
+    int claimWaitingSession(@Param("id") Long id,
+                            @Param("agent") User agent,
+                            @Param("expectedStatus") ChatSession.SessionStatus expectedStatus,
+                            @Param("newStatus") ChatSession.SessionStatus newStatus);
+    
+    // MySQL only: lock the oldest WAITING rows, skipping rows other nodes are claiming
+    @Query(value = "SELECT id FROM chat_sessions WHERE status = 'WAITING' ORDER BY started_at, id " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockNextWaitingSessionIds(@Param("limit") int limit);
+    
+    @Query("SELECT s.id FROM ChatSession s WHERE s.status = :status ORDER BY s.startedAt ASC, s.id ASC")
+    List<Long> findIdsByStatusInQueueOrder(@Param("status") ChatSession.SessionStatus status, Pageable pageable);
+    
+    // 1-based queue position of a session, or 0 if it is not waiting
+    @Query("SELECT COUNT(s) FROM ChatSession s, ChatSession me WHERE me.id = :id AND me.status = :status " +
+           "AND s.status = :status AND (s.startedAt < me.startedAt OR (s.startedAt = me.startedAt AND s.id <= me.id))")
+    long countQueuePosition(@Param("id") Long id, @Param("status") ChatSession.SessionStatus status);
 }
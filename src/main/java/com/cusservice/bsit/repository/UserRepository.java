@@ -2,7 +2,11 @@ package com.cusservice.bsit.repository;
 
 import com.cusservice.bsit.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,7 +16,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
     Optional<User> findByVerificationToken(String token);
+    List<User> findByRole(User.Role role);
     List<User> findByRoleAndAvailable(User.Role role, boolean available);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.available = :available WHERE u.id = :id")
+    int updateAvailability(@Param("id") Long id, @Param("available") boolean available);
 }
@@ -0,0 +1,150 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Closes WAITING chats whose student has left.
+ *
+ * STOMP connections are tracked per user. When a user's last connection goes
+ * away a grace-period timeout is put on a timing wheel; reconnecting in time
+ * cancels it, otherwise the user's waiting session is ended and drops out of
+ * the queue. Students with a waiting session after a restart get the same
+ * grace period to reconnect.
+ */
+@Service
+public class AbandonedSessionMonitor {
+
+    private final ChatService chatService;
+    private final UserService userService;
+    private final ChatSessionRepository chatSessionRepository;
+    private final long gracePeriodMillis;
+    private final TimingWheel<String> timeouts;
+    private final Counter abandoned;
+    private final Counter reconnected;
+
+    // Username -> open STOMP session IDs, only modified inside compute()
+    private final Map<String, Set<String>> connections = new ConcurrentHashMap<>();
+
+    public AbandonedSessionMonitor(ChatService chatService,
+                                   UserService userService,
+                                   ChatSessionRepository chatSessionRepository,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${chat.abandon.grace-period-ms:60000}") long gracePeriodMillis,
+                                   @Value("${chat.abandon.tick-ms:1000}") long tickMillis) {
+        this.chatService = chatService;
+        this.userService = userService;
+        this.chatSessionRepository = chatSessionRepository;
+        this.gracePeriodMillis = gracePeriodMillis;
+        this.timeouts = new TimingWheel<>(tickMillis, 512, System.currentTimeMillis());
+        this.abandoned = Counter.builder("chat.sessions.abandoned")
+                .description("Waiting sessions closed because the student disconnected")
+                .register(meterRegistry);
+        this.reconnected = Counter.builder("chat.sessions.reconnected")
+                .description("Users who reconnected within the grace period")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Give students who were waiting before a restart time to reconnect
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRecoveredSessions() {
+        long now = System.currentTimeMillis();
+        for (ChatSession session : chatSessionRepository.findByStatus(ChatSession.SessionStatus.WAITING)) {
+            String username = session.getCustomer().getUsername();
+            if (!connections.containsKey(username)) {
+                timeouts.schedule(username, gracePeriodMillis, now);
+            }
+        }
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null) {
+            return;
+        }
+        connections.compute(user.getName(), (name, ids) -> {
+            Set<String> open = ids != null ? ids : new HashSet<>();
+            open.add(sessionId);
+            return open;
+        });
+        if (timeouts.cancel(user.getName())) {
+            reconnected.increment();
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        // Disconnect can be published more than once per session; only the last real one counts
+        boolean[] lastConnection = new boolean[1];
+        connections.computeIfPresent(user.getName(), (name, ids) -> {
+            if (ids.remove(event.getSessionId()) && ids.isEmpty()) {
+                lastConnection[0] = true;
+                return null;
+            }
+            return ids;
+        });
+        if (lastConnection[0]) {
+            timeouts.schedule(user.getName(), gracePeriodMillis, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Close waiting sessions of users whose grace period ran out
+     */
+    @Scheduled(fixedDelayString = "${chat.abandon.tick-ms:1000}")
+    public void expireAbandoned() {
+        for (String username : timeouts.advance(System.currentTimeMillis())) {
+            if (connections.containsKey(username)) {
+                continue;
+            }
+            try {
+                closeWaitingSession(username);
+            } catch (Exception e) {
+                System.err.println("Error closing abandoned session for " + username + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isConnected(String username) {
+        return connections.containsKey(username);
+    }
+
+    private void closeWaitingSession(String username) {
+        Optional<User> userOpt = userService.findByUsername(username);
+        if (userOpt.isEmpty()) {
+            return;
+        }
+        Optional<ChatSession> waiting = chatService.getWaitingSessionForStudent(userOpt.get());
+        if (waiting.isPresent()) {
+            chatService.endChatSession(waiting.get().getId(), userOpt.get());
+            abandoned.increment();
+            System.out.println("Closed abandoned waiting session " + waiting.get().getId() + " for " + username);
+        }
+    }
+}
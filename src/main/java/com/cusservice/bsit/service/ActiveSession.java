@@ -0,0 +1,70 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+
+import java.util.Optional;
+
+/**
+ * Immutable routing view of an ACTIVE chat: who is in it and how to reach them
+ */
+public record ActiveSession(Long sessionId, Participant customer, Participant agent) {
+
+    public record Participant(Long id, String username, String fullName, String studentId) {
+
+        static Participant of(User user) {
+            return new Participant(user.getId(), user.getUsername(), user.getFullName(), user.getStudentId());
+        }
+
+        /**
+         * Reference usable as a foreign key without loading the user
+         */
+        public User toReference() {
+            User user = new User();
+            user.setId(id);
+            user.setUsername(username);
+            user.setFullName(fullName);
+            user.setStudentId(studentId);
+            return user;
+        }
+    }
+
+    static ActiveSession of(ChatSession session) {
+        return new ActiveSession(session.getId(), Participant.of(session.getCustomer()), Participant.of(session.getAgent()));
+    }
+
+    /**
+     * The participant with the given username, if they belong to this chat
+     */
+    public Optional<Participant> participant(String username) {
+        if (customer.username().equals(username)) {
+            return Optional.of(customer);
+        }
+        if (agent.username().equals(username)) {
+            return Optional.of(agent);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The other participant of the chat, if the given user belongs to it
+     */
+    public Optional<Participant> counterpart(String username) {
+        if (customer.username().equals(username)) {
+            return Optional.of(agent);
+        }
+        if (agent.username().equals(username)) {
+            return Optional.of(customer);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reference usable as a foreign key without loading the session
+     */
+    public ChatSession toReference() {
+        ChatSession session = new ChatSession();
+        session.setId(sessionId);
+        return session;
+    }
+}
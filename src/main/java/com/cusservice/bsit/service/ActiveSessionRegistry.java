@@ -0,0 +1,64 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of ACTIVE chats, so the message path can check the sender
+ * and find the recipients without reading users or sessions from the database.
+ *
+ * Entries are added when an agent accepts a chat and evicted when it ends;
+ * chats that were active before a restart are loaded at startup.
+ */
+@Service
+@RequiredArgsConstructor
+public class ActiveSessionRegistry {
+
+    private final ChatSessionRepository chatSessionRepository;
+
+    private final Map<Long, ActiveSession> sessions = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadActiveSessions() {
+        for (ChatSession session : chatSessionRepository.findByStatus(ChatSession.SessionStatus.ACTIVE)) {
+            register(session);
+        }
+        System.out.println("Active session registry loaded " + sessions.size() + " chats");
+    }
+
+    public void register(ChatSession session) {
+        if (session.getStatus() == ChatSession.SessionStatus.ACTIVE && session.getAgent() != null) {
+            sessions.put(session.getId(), ActiveSession.of(session));
+        }
+    }
+
+    public void evict(Long sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public Optional<ActiveSession> get(Long sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId));
+    }
+
+    /**
+     * Active chats the user takes part in, as customer or agent
+     */
+    public List<ActiveSession> sessionsOf(String username) {
+        return sessions.values().stream()
+                .filter(session -> session.participant(username).isPresent())
+                .toList();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
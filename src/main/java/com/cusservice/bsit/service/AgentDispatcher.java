@@ -0,0 +1,133 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.User;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes the head of the waiting queue to the best available support agent.
+ *
+ * Enabled with chat.dispatch.enabled; the routing strategy is chosen with
+ * chat.dispatch.strategy (least-loaded, longest-idle or topic-affinity).
+ * Agents can still accept students manually while the dispatcher runs.
+ *
+ * A student whose assignment fails is skipped for the rest of the tick, so
+ * the students behind them are still served. After a few failed ticks the
+ * entry is checked against the database and dropped if its session is gone.
+ */
+@Service
+@RequiredArgsConstructor
+public class AgentDispatcher {
+
+    // Upper bound on assignments per tick so one run never monopolises the scheduler
+    private static final int MAX_ASSIGNMENTS_PER_TICK = 50;
+    // Failed ticks before an entry is checked for a deleted or closed session
+    private static final int MAX_FAILED_ATTEMPTS = 3;
+
+    private final ChatService chatService;
+    private final UserService userService;
+    private final AgentStateRegistry agentStateRegistry;
+    private final List<RoutingStrategy> strategies;
+
+    @Value("${chat.dispatch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.dispatch.strategy:least-loaded}")
+    private String strategyName;
+
+    private RoutingStrategy strategy;
+
+    // Session ID -> ticks in which its assignment failed
+    private final Map<Long, Integer> failedAttempts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void selectStrategy() {
+        strategy = strategies.stream()
+                .filter(s -> s.name().equalsIgnoreCase(strategyName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown chat.dispatch.strategy: " + strategyName));
+        if (enabled) {
+            System.out.println("Agent dispatcher enabled with strategy: " + strategy.name());
+        }
+    }
+
+    /**
+     * Route waiting students to available agents until either runs out
+     */
+    @Scheduled(fixedDelayString = "${chat.dispatch.interval-ms:500}")
+    public void dispatch() {
+        if (!enabled) {
+            return;
+        }
+        List<QueueStudentDTO> waiting = chatService.getQueueSnapshot().waitingStudents();
+        if (!failedAttempts.isEmpty()) {
+            Set<Long> queued = waiting.stream().map(QueueStudentDTO::getSessionId).collect(Collectors.toSet());
+            failedAttempts.keySet().retainAll(queued);
+        }
+
+        int attempts = 0;
+        // Entries that failed stay behind in the snapshot and are simply passed over
+        for (QueueStudentDTO entry : waiting) {
+            if (attempts++ == MAX_ASSIGNMENTS_PER_TICK) {
+                return;
+            }
+            Optional<AgentState> target = strategy.select(entry, agentStateRegistry.routableAgents());
+            if (target.isEmpty()) {
+                return;
+            }
+            Optional<User> agent = userService.findById(target.get().getId());
+            if (agent.isEmpty()) {
+                // The user was removed; not the student's fault, so it does not count against them
+                agentStateRegistry.forget(target.get().getId());
+                continue;
+            }
+            if (assign(entry, agent.get())) {
+                failedAttempts.remove(entry.getSessionId());
+            } else {
+                recordFailure(entry.getSessionId());
+            }
+        }
+    }
+
+    private void recordFailure(Long sessionId) {
+        int failures = failedAttempts.merge(sessionId, 1, Integer::sum);
+        if (failures < MAX_FAILED_ATTEMPTS) {
+            return;
+        }
+        failedAttempts.remove(sessionId);
+        try {
+            if (chatService.removeStaleQueueEntry(sessionId)) {
+                System.out.println("Dispatcher dropped stale queue entry for session " + sessionId);
+            }
+        } catch (Exception e) {
+            System.err.println("Could not check queue entry for session " + sessionId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns false if the session could not be assigned
+     */
+    private boolean assign(QueueStudentDTO entry, User agent) {
+        try {
+            chatService.assignAgentToSession(entry.getSessionId(), agent);
+            System.out.println("Dispatched session " + entry.getSessionId() + " to agent " + agent.getUsername()
+                    + " (" + strategy.name() + ")");
+            return true;
+        } catch (Exception e) {
+            // Usually another agent accepted the session first; the rest of the queue moves on
+            System.err.println("Dispatch of session " + entry.getSessionId() + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+}
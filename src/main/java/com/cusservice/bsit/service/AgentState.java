@@ -0,0 +1,170 @@
+package com.cusservice.bsit.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory routing and capacity state for one support agent
+ */
+public class AgentState {
+
+    // How many recently handled topics are remembered for topic affinity
+    private static final int RECENT_TOPICS = 5;
+
+    private final Long id;
+    private final String username;
+    private final String fullName;
+    private final int maxSessions;
+
+    // Active sessions plus in-flight reservations; never exceeds maxSessions via tryReserve
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final Set<Long> activeSessionIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Deque<String> recentTopics = new ArrayDeque<>(RECENT_TOPICS);
+
+    private volatile long idleSince = System.currentTimeMillis();
+
+    public AgentState(Long id, String username, String fullName, int maxSessions) {
+        this.id = id;
+        this.username = username;
+        this.fullName = fullName;
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Whether the dispatcher may route a new session to this agent
+     */
+    public boolean isRoutable() {
+        return connections.get() > 0 && getRemainingCapacity() > 0;
+    }
+
+    /**
+     * Reserve one session slot; returns false if the agent is at capacity
+     */
+    boolean tryReserve() {
+        int current;
+        do {
+            current = reserved.get();
+            if (current >= maxSessions) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Give back a reservation that did not turn into a session
+     */
+    void cancelReservation() {
+        release();
+    }
+
+    /**
+     * Record a session that was assigned using an earlier reservation
+     */
+    void sessionAssigned(Long sessionId, String topic) {
+        activeSessionIds.add(sessionId);
+        rememberTopic(topic);
+    }
+
+    /**
+     * Record a session found ACTIVE at startup, even if it exceeds capacity
+     */
+    void sessionRestored(Long sessionId, String topic) {
+        if (activeSessionIds.add(sessionId)) {
+            reserved.incrementAndGet();
+            rememberTopic(topic);
+        }
+    }
+
+    /**
+     * Drop a closed session; returns true if it was tracked
+     */
+    boolean sessionReleased(Long sessionId) {
+        if (!activeSessionIds.remove(sessionId)) {
+            return false;
+        }
+        release();
+        return true;
+    }
+
+    void connected() {
+        if (connections.getAndIncrement() == 0) {
+            idleSince = System.currentTimeMillis();
+        }
+    }
+
+    void disconnected() {
+        connections.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    private void release() {
+        if (reserved.updateAndGet(n -> Math.max(0, n - 1)) == 0) {
+            idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private void rememberTopic(String topic) {
+        if (topic == null || topic.isBlank()) {
+            return;
+        }
+        synchronized (recentTopics) {
+            recentTopics.remove(topic);
+            if (recentTopics.size() == RECENT_TOPICS) {
+                recentTopics.removeLast();
+            }
+            recentTopics.addFirst(topic);
+        }
+    }
+
+    public boolean hasRecentTopic(String topic) {
+        if (topic == null) {
+            return false;
+        }
+        synchronized (recentTopics) {
+            return recentTopics.contains(topic);
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * IDs of the sessions this agent holds, without pending reservations
+     */
+    public Set<Long> getActiveSessionIds() {
+        return Set.copyOf(activeSessionIds);
+    }
+
+    public int getActiveSessions() {
+        return reserved.get();
+    }
+
+    public int getRemainingCapacity() {
+        return Math.max(0, maxSessions - reserved.get());
+    }
+
+    public boolean isConnected() {
+        return connections.get() > 0;
+    }
+
+    public long getIdleSince() {
+        return idleSince;
+    }
+}
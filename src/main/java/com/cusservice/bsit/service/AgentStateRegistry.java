@@ -0,0 +1,199 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import com.cusservice.bsit.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of support agents used for routing and capacity decisions.
+ *
+ * Loaded once at startup and then kept current from assignment, close and
+ * WebSocket connect/disconnect events, so the dispatcher never has to query
+ * the users table to pick an agent. Each agent may hold up to
+ * chat.agent.max-sessions active chats; the users.available flag is written
+ * lazily, only for agents whose has-capacity state changed since the last flush.
+ */
+@Service
+@RequiredArgsConstructor
+public class AgentStateRegistry {
+
+    private final UserRepository userRepository;
+    private final ChatSessionRepository chatSessionRepository;
+
+    private final Map<Long, AgentState> agentsById = new ConcurrentHashMap<>();
+    private final Map<String, AgentState> agentsByUsername = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyAgents = ConcurrentHashMap.newKeySet();
+
+    @Value("${chat.agent.max-sessions:3}")
+    private int maxSessions;
+
+    /**
+     * Load all agents and their currently active sessions
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAgents() {
+        for (User agent : userRepository.findByRole(User.Role.SUPPORT_AGENT)) {
+            track(agent);
+        }
+        for (ChatSession session : chatSessionRepository.findByStatus(ChatSession.SessionStatus.ACTIVE)) {
+            if (session.getAgent() != null) {
+                track(session.getAgent()).sessionRestored(session.getId(), session.getTopic());
+            }
+        }
+        System.out.println("Agent registry loaded " + agentsById.size() + " support agents");
+    }
+
+    /**
+     * Get (or start tracking) the state for an agent
+     */
+    public AgentState track(User agent) {
+        return agentsById.computeIfAbsent(agent.getId(), id -> {
+            AgentState state = new AgentState(agent.getId(), agent.getUsername(), agent.getFullName(), maxSessions);
+            agentsByUsername.put(agent.getUsername(), state);
+            return state;
+        });
+    }
+
+    public Optional<AgentState> get(Long agentId) {
+        return Optional.ofNullable(agentsById.get(agentId));
+    }
+
+    /**
+     * Stop tracking an agent (e.g. the user was removed)
+     */
+    public void forget(Long agentId) {
+        AgentState state = agentsById.remove(agentId);
+        if (state != null) {
+            agentsByUsername.remove(state.getUsername());
+        }
+    }
+
+    /**
+     * Reserve a session slot for the agent; false if they are at capacity
+     */
+    public boolean tryReserve(User agent) {
+        AgentState state = track(agent);
+        boolean reserved = state.tryReserve();
+        if (reserved && state.getRemainingCapacity() == 0) {
+            dirtyAgents.add(agent.getId());
+        }
+        return reserved;
+    }
+
+    public void cancelReservation(Long agentId) {
+        AgentState state = agentsById.get(agentId);
+        if (state != null) {
+            state.cancelReservation();
+            dirtyAgents.add(agentId);
+        }
+    }
+
+    public void sessionAssigned(User agent, ChatSession session) {
+        track(agent).sessionAssigned(session.getId(), session.getTopic());
+    }
+
+    public void sessionReleased(Long agentId, Long sessionId) {
+        AgentState state = agentsById.get(agentId);
+        if (state != null && state.sessionReleased(sessionId)) {
+            dirtyAgents.add(agentId);
+        }
+    }
+
+    /**
+     * Number of active sessions plus pending reservations, served from memory
+     */
+    public int activeSessionCount(Long agentId) {
+        AgentState state = agentsById.get(agentId);
+        return state == null ? 0 : state.getActiveSessions();
+    }
+
+    /**
+     * IDs of the agent's active sessions, or empty if the agent is not tracked
+     */
+    public Optional<Set<Long>> activeSessionIds(Long agentId) {
+        return Optional.ofNullable(agentsById.get(agentId)).map(AgentState::getActiveSessionIds);
+    }
+
+    public int remainingCapacity(User agent) {
+        return track(agent).getRemainingCapacity();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Persist users.available for agents whose capacity state changed
+     */
+    @Scheduled(fixedDelayString = "${chat.agent.availability-flush-ms:5000}")
+    public void flushAvailability() {
+        Iterator<Long> it = dirtyAgents.iterator();
+        while (it.hasNext()) {
+            Long agentId = it.next();
+            it.remove();
+            AgentState state = agentsById.get(agentId);
+            if (state != null) {
+                userRepository.updateAvailability(agentId, state.getRemainingCapacity() > 0);
+            }
+        }
+    }
+
+    /**
+     * Session slots of every connected agent, busy or not
+     */
+    public int staffedSlots() {
+        int slots = 0;
+        for (AgentState state : agentsById.values()) {
+            if (state.isConnected()) {
+                slots += state.getMaxSessions();
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Agents that can take a new session right now
+     */
+    public List<AgentState> routableAgents() {
+        return agentsById.values().stream()
+                .filter(AgentState::isRoutable)
+                .toList();
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        AgentState state = stateFor(event.getUser());
+        if (state != null) {
+            state.connected();
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        AgentState state = stateFor(event.getUser());
+        if (state != null) {
+            state.disconnected();
+        }
+    }
+
+    private AgentState stateFor(Principal principal) {
+        return principal == null ? null : agentsByUsername.get(principal.getName());
+    }
+}
@@ -0,0 +1,156 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.Attachment;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.AttachmentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed file store for chat attachments.
+ *
+ * Each blob is saved under its SHA-256 (blobs/ab/cd/abcd...), so the same
+ * image uploaded twice is stored once. Uploads are streamed to a temp file
+ * while hashing and then moved into place, so a half-written blob is never
+ * visible. IMAGE and FILE messages carry only the attachment URL.
+ */
+@Service
+public class AttachmentStore {
+
+    public static final String URL_PREFIX = "/api/attachments/";
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final AttachmentRepository attachmentRepository;
+    private final Path root;
+    private final long maxSize;
+
+    public AttachmentStore(AttachmentRepository attachmentRepository,
+                           @Value("${chat.attachments.dir:data/attachments}") String dir,
+                           @Value("${chat.attachments.max-size:5242880}") long maxSize) {
+        this.attachmentRepository = attachmentRepository;
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Store an upload, reusing the existing blob if the same content was uploaded before
+     */
+    public Attachment store(MultipartFile file, User uploader) throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        if (file.getSize() > maxSize) {
+            throw new IllegalArgumentException("File is larger than " + (maxSize / (1024 * 1024)) + "MB");
+        }
+
+        Path tempDir = Files.createDirectories(root.resolve("tmp"));
+        Path temp = Files.createTempFile(tempDir, "upload-", ".part");
+        try {
+            String id;
+            try (InputStream in = file.getInputStream();
+                 DigestOutputStream out = new DigestOutputStream(Files.newOutputStream(temp), sha256())) {
+                copyLimited(in, out);
+                id = HexFormat.of().formatHex(out.getMessageDigest().digest());
+            }
+
+            Path blob = blobPath(id);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Same content finished uploading concurrently
+                }
+            }
+
+            Optional<Attachment> existing = attachmentRepository.findById(id);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+            Attachment attachment = new Attachment();
+            attachment.setId(id);
+            attachment.setContentType(file.getContentType() != null ? file.getContentType() : "application/octet-stream");
+            attachment.setSize(Files.size(blob));
+            attachment.setOriginalName(file.getOriginalFilename());
+            attachment.setUploadedBy(uploader);
+            return attachmentRepository.save(attachment);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public Optional<Attachment> find(String id) {
+        if (!isValidId(id)) {
+            return Optional.empty();
+        }
+        return attachmentRepository.findById(id);
+    }
+
+    /**
+     * The blob for an attachment, served straight from disk
+     */
+    public Resource open(Attachment attachment) {
+        return new FileSystemResource(blobPath(attachment.getId()));
+    }
+
+    public String urlOf(Attachment attachment) {
+        return URL_PREFIX + attachment.getId();
+    }
+
+    /**
+     * True if the message content is a reference to a stored attachment
+     */
+    public boolean isReference(String content) {
+        return content != null
+                && content.startsWith(URL_PREFIX)
+                && find(content.substring(URL_PREFIX.length())).isPresent();
+    }
+
+    private void copyLimited(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxSize) {
+                throw new IllegalArgumentException("File is larger than " + (maxSize / (1024 * 1024)) + "MB");
+            }
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private Path blobPath(String id) {
+        return root.resolve("blobs").resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id);
+    }
+
+    private static boolean isValidId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+}
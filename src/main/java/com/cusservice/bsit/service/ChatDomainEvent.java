@@ -0,0 +1,41 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.ChatSession;
+
+/**
+ * Things that happened to a chat, published by ChatService and the chat
+ * controller. Listeners only see them once the change has been committed;
+ * see ChatEventNotifier.
+ */
+public sealed interface ChatDomainEvent {
+
+    Long sessionId();
+
+    /**
+     * A student joined the waiting queue
+     */
+    record SessionQueued(Long sessionId, String customerUsername, QueueStudentDTO entry) implements ChatDomainEvent {
+    }
+
+    /**
+     * An agent took a waiting chat. The session is read-only from here on.
+     */
+    record AgentAssigned(Long sessionId, ChatSession session) implements ChatDomainEvent {
+    }
+
+    /**
+     * A chat was closed, either while waiting or while active
+     */
+    record SessionClosed(Long sessionId, String customerUsername, String agentUsername,
+                         boolean wasWaiting) implements ChatDomainEvent {
+    }
+
+    /**
+     * A message was saved and should be delivered to both participants
+     */
+    record MessagePosted(Long sessionId, ChatMessageFrame frame, String customerUsername,
+                         String agentUsername) implements ChatDomainEvent {
+    }
+}
@@ -0,0 +1,109 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.config.StripedExecutor;
+import com.cusservice.bsit.model.ChatSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Turns chat domain events into WebSocket notifications.
+ *
+ * Listeners run only after the publishing transaction has committed (or right
+ * away when there was none), and they do no I/O themselves: the sends are
+ * handed to a bounded striped executor, so a slow client never holds a pooled
+ * database connection. Events for one chat share a lane and are delivered in
+ * the order they were published. If a lane is full the sends run on the
+ * caller's thread rather than being dropped.
+ */
+@Service
+public class ChatEventNotifier {
+
+    private final ChatService chatService;
+    private final ChatNotificationService notificationService;
+    private final QueueUpdateBroadcaster queueUpdateBroadcaster;
+    private final OutboundFanout fanout;
+    private final StripedExecutor executor;
+    private final Counter overflows;
+
+    public ChatEventNotifier(ChatService chatService,
+                             ChatNotificationService notificationService,
+                             QueueUpdateBroadcaster queueUpdateBroadcaster,
+                             OutboundFanout fanout,
+                             MeterRegistry meterRegistry,
+                             @Value("${chat.notifications.stripes:4}") int stripes,
+                             @Value("${chat.notifications.stripe-queue-capacity:10000}") int queueCapacity) {
+        this.chatService = chatService;
+        this.notificationService = notificationService;
+        this.queueUpdateBroadcaster = queueUpdateBroadcaster;
+        this.fanout = fanout;
+        this.executor = new StripedExecutor("notifications", stripes, queueCapacity, meterRegistry);
+        this.overflows = Counter.builder("chat.notifications.overflows")
+                .description("Notifications sent on the publishing thread because their lane was full")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSessionQueued(ChatDomainEvent.SessionQueued event) {
+        dispatch(event, () -> {
+            queueUpdateBroadcaster.queued(event.entry());
+            int position = chatService.getQueuePosition(event.sessionId());
+            notificationService.sendQueuePosition(event.customerUsername(), event.sessionId(), position, chatService.getQueueSize());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAgentAssigned(ChatDomainEvent.AgentAssigned event) {
+        dispatch(event, () -> {
+            ChatSession session = event.session();
+            String customerUsername = session.getCustomer().getUsername();
+            notificationService.sendAgentJoined(customerUsername, event.sessionId(), session.getAgent().getFullName());
+            notificationService.sendSessionInfo(session, "active", customerUsername, session.getAgent().getUsername());
+            queueUpdateBroadcaster.removed(event.sessionId());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSessionClosed(ChatDomainEvent.SessionClosed event) {
+        dispatch(event, () -> {
+            if (event.wasWaiting()) {
+                queueUpdateBroadcaster.removed(event.sessionId());
+            }
+            notificationService.sendSessionEnded(event.sessionId(), event.customerUsername(), event.agentUsername());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePosted(ChatDomainEvent.MessagePosted event) {
+        dispatch(event, () -> fanout.sendToUsers("/queue/messages", event.frame(),
+                event.customerUsername(), event.agentUsername()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void dispatch(ChatDomainEvent event, Runnable send) {
+        Runnable task = () -> {
+            try {
+                send.run();
+            } catch (Exception e) {
+                System.err.println("Failed to send " + event.getClass().getSimpleName() + " notifications for session "
+                        + event.sessionId() + ": " + e.getMessage());
+            }
+        };
+        try {
+            executor.execute(event.sessionId(), task);
+        } catch (RejectedExecutionException e) {
+            // The change is already committed; late is better than never
+            overflows.increment();
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatMessage;
+import com.cusservice.bsit.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists chat messages, optionally write-behind.
+ *
+ * chat.messages.persistence selects the durability level:
+ * "sync" saves each message in its own insert before it is delivered,
+ * "group-commit" hands messages to a writer thread that inserts everything
+ * waiting in one JDBC batch and transaction, and the sender waits for that
+ * commit, and "async" returns immediately and lets the writer catch up.
+ * The journal is bounded; when it is full messages are saved synchronously
+ * instead of being dropped. Pending messages are flushed on shutdown, and
+ * messages written after that are saved synchronously.
+ *
+ * In "async" mode a message is delivered before its row exists, so the frame
+ * carries a sequence number but no message ID. Replay on resume works by
+ * sequence and is unaffected, but a client that falls back to the history API
+ * can only page "after" the newest ID it got from history, so that catch-up
+ * re-reads more than it needs (and drops duplicates by sequence). Use
+ * "group-commit" where that matters.
+ */
+@Service
+public class ChatMessageWriter {
+
+    public enum Mode {
+        SYNC,
+        GROUP_COMMIT,
+        ASYNC
+    }
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_messages (session_id, sender_id, content, sent_at, type, sender_name, seq, client_message_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Pending insert; a null message is a flush marker
+    private record Pending(ChatMessage message, CompletableFuture<Void> done) {
+    }
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Mode mode;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<Pending> journal;
+
+    private final Counter batches;
+    private final Counter rows;
+    private final Counter failures;
+    private final Counter overflows;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public ChatMessageWriter(ChatMessageRepository chatMessageRepository,
+                             JdbcTemplate jdbcTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${chat.messages.persistence:sync}") String mode,
+                             @Value("${chat.messages.batch-size:100}") int batchSize,
+                             @Value("${chat.messages.journal-capacity:10000}") int journalCapacity,
+                             @Value("${chat.messages.flush-interval-ms:20}") long flushIntervalMillis) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.journal = new ArrayBlockingQueue<>(journalCapacity);
+
+        this.batches = Counter.builder("chat.messages.writer.batches")
+                .description("Batched message inserts committed")
+                .register(meterRegistry);
+        this.rows = Counter.builder("chat.messages.writer.rows")
+                .description("Messages written by the batch writer")
+                .register(meterRegistry);
+        this.failures = Counter.builder("chat.messages.writer.failures")
+                .description("Messages the batch writer could not persist")
+                .register(meterRegistry);
+        this.overflows = Counter.builder("chat.messages.writer.overflows")
+                .description("Messages saved synchronously because the journal was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.messages.writer.pending", journal, BlockingQueue::size)
+                .description("Messages waiting in the write-behind journal")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == Mode.SYNC) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "chat-message-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("Chat message writer started in " + mode + " mode, batch size " + batchSize);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Persist a message according to the configured mode. In "async" mode the
+     * returned message has no ID yet; see the class comment.
+     */
+    public ChatMessage write(ChatMessage message) {
+        if (mode == Mode.SYNC || !running) {
+            // Also after shutdown, when the writer thread may already be gone
+            return chatMessageRepository.save(message);
+        }
+
+        Pending pending = new Pending(message, new CompletableFuture<>());
+        if (!journal.offer(pending)) {
+            // Back-pressure: never drop a message, just lose the batching benefit
+            overflows.increment();
+            return chatMessageRepository.save(message);
+        }
+        if (!running && journal.remove(pending)) {
+            // Shut down while this was being queued; the writer may not see it
+            return chatMessageRepository.save(message);
+        }
+        if (mode == Mode.GROUP_COMMIT) {
+            try {
+                pending.done().join();
+            } catch (CompletionException e) {
+                throw new RuntimeException("Failed to save chat message", e.getCause());
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Wait until every message written so far has been committed
+     */
+    public void flush() {
+        if (!running) {
+            return;
+        }
+        Pending marker = new Pending(null, new CompletableFuture<>());
+        try {
+            journal.put(marker);
+            marker.done().get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Timed out waiting for chat messages to flush: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        // The writer drains everything still in the journal before it exits
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        if (!journal.isEmpty()) {
+            System.err.println("Chat message writer stopped with " + journal.size() + " unsaved messages");
+        }
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !journal.isEmpty()) {
+            try {
+                Pending first = journal.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (mode == Mode.ASYNC && first.message() != null && running) {
+                    // Nobody is waiting, so give the batch a moment to fill up
+                    Thread.sleep(flushIntervalMillis);
+                }
+                // Everything that arrived while the last batch was committing goes in this one
+                batch.add(first);
+                journal.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                System.err.println("Chat message writer error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            if (pending.message() != null) {
+                messages.add(pending.message());
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            try {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    insertInTransaction(connection, messages);
+                    return null;
+                });
+                batches.increment();
+                rows.increment(messages.size());
+            } catch (Exception e) {
+                System.err.println("Batch insert of " + messages.size() + " chat messages failed, retrying one by one: "
+                        + e.getMessage());
+                retryIndividually(batch);
+                return;
+            }
+        }
+        for (Pending pending : batch) {
+            pending.done().complete(null);
+        }
+    }
+
+    private void retryIndividually(List<Pending> batch) {
+        for (Pending pending : batch) {
+            if (pending.message() == null) {
+                pending.done().complete(null);
+                continue;
+            }
+            try {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    insertInTransaction(connection, List.of(pending.message()));
+                    return null;
+                });
+                rows.increment();
+                pending.done().complete(null);
+            } catch (Exception e) {
+                failures.increment();
+                System.err.println("Could not save chat message for session "
+                        + pending.message().getSession().getId() + ": " + e.getMessage());
+                pending.done().completeExceptionally(e);
+            }
+        }
+    }
+
+    private void insertInTransaction(Connection connection, List<ChatMessage> messages) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (ChatMessage message : messages) {
+                statement.setLong(1, message.getSession().getId());
+                if (message.getSender() != null) {
+                    statement.setLong(2, message.getSender().getId());
+                } else {
+                    statement.setNull(2, Types.BIGINT);
+                }
+                statement.setString(3, message.getContent());
+                statement.setTimestamp(4, Timestamp.valueOf(message.getSentAt()));
+                statement.setString(5, message.getType().name());
+                statement.setString(6, message.getSenderName());
+                if (message.getSeq() != null) {
+                    statement.setLong(7, message.getSeq());
+                } else {
+                    statement.setNull(7, Types.BIGINT);
+                }
+                statement.setString(8, message.getClientMessageId());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                for (int i = 0; i < messages.size() && keys.next(); i++) {
+                    messages.get(i).setId(keys.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatEvent;
+import com.cusservice.bsit.model.ChatSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Personal chat notifications sent to /user/queue/notifications
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatNotificationService {
+
+    private static final String NOTIFICATIONS = "/queue/notifications";
+
+    private final OutboundFanout fanout;
+    private final WaitTimeEstimator waitTimeEstimator;
+
+    public void sendQueuePosition(String username, Long sessionId, int position, int queueSize) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.QueuePosition(
+            sessionId,
+            position,
+            queueSize,
+            waitTimeEstimator.estimateWaitSeconds(position)
+        ));
+    }
+    
+    public void sendSessionInfo(String username, ChatSession session, String status) {
+        fanout.sendToUser(username, NOTIFICATIONS, sessionInfo(session, status));
+    }
+    
+    /**
+     * Send session info for a chat known to the active session registry
+     */
+    public void sendSessionInfo(String username, ActiveSession session, String status) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.SessionInfo(
+            session.sessionId(),
+            status,
+            session.customer().fullName(),
+            session.customer().studentId(),
+            session.agent().fullName(),
+            session.agent().username()
+        ));
+    }
+    
+    /**
+     * Send the same session info to several users, encoding it once
+     */
+    public void sendSessionInfo(ChatSession session, String status, String... usernames) {
+        fanout.sendToUsers(NOTIFICATIONS, sessionInfo(session, status), usernames);
+    }
+    
+    /**
+     * Tell both participants that a chat has ended
+     */
+    public void sendSessionEnded(Long sessionId, String... usernames) {
+        fanout.sendToUsers(NOTIFICATIONS, new ChatEvent.SessionEnded(sessionId), usernames);
+    }
+    
+    /**
+     * Missed messages can no longer be replayed; the client reloads them from the history API
+     */
+    public void sendResyncRequired(String username, Long sessionId) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.ResyncRequired(sessionId));
+    }
+    
+    /**
+     * Tell a chat participant that the other one started or stopped typing
+     */
+    public void sendTyping(String username, Long sessionId, String typer, boolean typing) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.Typing(sessionId, typer, typing));
+    }
+    
+    /**
+     * Tell a chat participant that the other one went online, away or offline
+     */
+    public void sendPresence(String username, Long sessionId, String subject, String status) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.Presence(sessionId, subject, status));
+    }
+    
+    public void sendAgentJoined(String username, Long sessionId, String agentName) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.AgentJoined(sessionId, agentName));
+    }
+    
+    /**
+     * The queue is full; the client may try again after the given delay
+     */
+    public void sendQueueFull(String username, int retryAfterSeconds) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.QueueFull(
+            "All agents are busy and the queue is full. Please try again shortly.",
+            retryAfterSeconds
+        ));
+    }
+    
+    /**
+     * The queue is full and the student is on the callback list
+     */
+    public void sendCallbackScheduled(String username) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.CallbackScheduled(
+            "All agents are busy. Keep this page open and you will join the queue as soon as a spot opens."
+        ));
+    }
+    
+    /**
+     * A queue spot is being held for a student from the callback list
+     */
+    public void sendCallbackReady(String username) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.CallbackReady());
+    }
+    
+    public void sendError(String username, String errorMessage) {
+        fanout.sendToUser(username, NOTIFICATIONS, new ChatEvent.Error(errorMessage));
+    }
+    
+    private static ChatEvent.SessionInfo sessionInfo(ChatSession session, String status) {
+        boolean hasAgent = session.getAgent() != null;
+        return new ChatEvent.SessionInfo(
+            session.getId(),
+            status,
+            session.getCustomer().getFullName(),
+            session.getCustomer().getStudentId(),
+            hasAgent ? session.getAgent().getFullName() : null,
+            hasAgent ? session.getAgent().getUsername() : null
+        );
+    }
+}
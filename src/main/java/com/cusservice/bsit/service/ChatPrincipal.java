@@ -0,0 +1,40 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.User;
+
+import java.security.Principal;
+
+/**
+ * Principal bound to a STOMP connection when it connects.
+ *
+ * Carries what message handlers need about the sender, so they never look the
+ * user up again and never trust a username sent in the payload. The name is
+ * the username, so user destinations keep working.
+ */
+public record ChatPrincipal(Long id, String username, User.Role role, String fullName) implements Principal {
+
+    public static ChatPrincipal of(User user) {
+        return new ChatPrincipal(user.getId(), user.getUsername(), user.getRole(), user.getFullName());
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public boolean isAgent() {
+        return role == User.Role.SUPPORT_AGENT;
+    }
+
+    /**
+     * Reference usable as a foreign key without loading the user
+     */
+    public User toReference() {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRole(role);
+        user.setFullName(fullName);
+        return user;
+    }
+}
@@ -0,0 +1,66 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueSnapshot;
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.User;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Queue of students waiting for an agent.
+ *
+ * Selected with chat.queue.engine: "memory" keeps the queue in this JVM,
+ * "database" uses the WAITING rows in chat_sessions so several app nodes can
+ * share one queue.
+ */
+public interface ChatQueue {
+
+    /**
+     * Add a newly saved WAITING session and return its ticket number
+     */
+    long enqueue(QueueStudentDTO entry);
+
+    /**
+     * Drop a session from the queue (e.g. the student cancelled)
+     */
+    boolean remove(Long sessionId);
+
+    /**
+     * Atomically move a WAITING session to ACTIVE for the given agent.
+     * Returns false if another agent (or node) claimed it first.
+     */
+    boolean claim(Long sessionId, User agent);
+
+    /**
+     * Claim the session at the head of the queue for the given agent
+     */
+    Optional<Long> claimNext(User agent);
+
+    /**
+     * The session at the head of the queue, without claiming it
+     */
+    Optional<QueueStudentDTO> peek();
+
+    /**
+     * 1-based position of a session, or -1 if it is not queued
+     */
+    int position(Long sessionId);
+
+    int size();
+
+    /**
+     * The queued session of a student, by their user ID
+     */
+    Optional<Long> sessionOf(Long customerId);
+
+    /**
+     * Waiting students in queue order
+     */
+    List<QueueStudentDTO> snapshot();
+
+    /**
+     * Waiting students in queue order with a version for cache validation
+     */
+    QueueSnapshot versionedSnapshot();
+}
@@ -1,5 +1,7 @@
 package com.cusservice.bsit.service;
 
+import com.cusservice.bsit.dto.MessageView;
+import com.cusservice.bsit.dto.QueueSnapshot;
 import com.cusservice.bsit.dto.QueueStudentDTO;
 import com.cusservice.bsit.model.ChatMessage;
 import com.cusservice.bsit.model.ChatSession;
@@ -7,13 +9,15 @@ import com.cusservice.bsit.model.User;
 import com.cusservice.bsit.repository.ChatMessageRepository;
 import com.cusservice.bsit.repository.ChatSessionRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,11 +25,17 @@ import java.util.stream.Collectors;
 public class ChatService {
     private final ChatSessionRepository chatSessionRepository;
     private final ChatMessageRepository chatMessageRepository;
-    private final UserService userService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final AgentStateRegistry agentStateRegistry;
+    private final ActiveSessionRegistry activeSessionRegistry;
+    private final WaitTimeEstimator waitTimeEstimator;
+    private final QueueUpdateBroadcaster queueUpdateBroadcaster;
+    private final ChatMessageWriter chatMessageWriter;
+    private final MessageReplayBuffer messageReplayBuffer;
+    private final RecentMessageIds recentMessageIds;
+    private final ApplicationEventPublisher eventPublisher;
     
-    // Queue for students waiting for an agent
-    private final Queue<ChatSession> studentQueue = new ConcurrentLinkedQueue<>();
+    // Queue for students waiting for an agent (in-memory or database engine)
+    private final ChatQueue studentQueue;
     
     /**
      * Create a new chat session for a student
@@ -42,17 +52,12 @@ public class ChatService {
         System.out.println("Saved chat session with ID: " + savedSession.getId());
         
         // Add to waiting queue
-        studentQueue.add(savedSession);
-        System.out.println("Added to queue, current queue size: " + studentQueue.size());
+        QueueStudentDTO entry = QueueStudentDTO.fromChatSession(savedSession);
+        long ticket = studentQueue.enqueue(entry);
+        System.out.println("Added to queue with ticket " + ticket + ", current queue size: " + studentQueue.size());
         
-        // Notify all agents about new student in queue
-        Map<String, Object> queueUpdate = new HashMap<>();
-        queueUpdate.put("type", "NEW_STUDENT");
-        queueUpdate.put("sessionId", savedSession.getId());
-        queueUpdate.put("studentName", student.getFullName());
-        queueUpdate.put("studentId", student.getStudentId());
-        queueUpdate.put("queueSize", studentQueue.size());
-        messagingTemplate.convertAndSend("/topic/queue-updates", queueUpdate);
+        // Agents and the student hear about it from ChatEventNotifier
+        eventPublisher.publishEvent(new ChatDomainEvent.SessionQueued(savedSession.getId(), student.getUsername(), entry));
         
         return savedSession;
     }
@@ -60,16 +65,25 @@ public class ChatService {
     /**
      * Add a message to a chat session
      */
-    @Transactional
     public ChatMessage addMessage(Long sessionId, User sender, String content) {
         return addMessage(sessionId, sender, content, ChatMessage.MessageType.TEXT);
     }
     
     /**
-     * Add a message to a chat session with specific type
+     * Add a message to a chat session with specific type.
+     * Not transactional: with write-behind the sender must not hold a
+     * connection while the batch writer commits.
      */
-    @Transactional
     public ChatMessage addMessage(Long sessionId, User sender, String content, ChatMessage.MessageType type) {
+        return addMessage(sessionId, sender, content, type, null);
+    }
+    
+    /**
+     * Add a message carrying the sender's client message ID. A second insert
+     * with the same ID in the same session fails on the unique index.
+     */
+    public ChatMessage addMessage(Long sessionId, User sender, String content, ChatMessage.MessageType type,
+                                  String clientMessageId) {
         ChatSession session = chatSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Chat session not found"));
         
@@ -79,19 +93,82 @@ public class ChatService {
         message.setContent(content);
         message.setSentAt(LocalDateTime.now());
         message.setType(type);
+        message.setSeq(messageReplayBuffer.nextSequence(sessionId));
+        message.setClientMessageId(clientMessageId);
+        
+        return chatMessageWriter.write(message);
+    }
+    
+    /**
+     * Add a message to an active chat from its registry entry, without
+     * reading the session or the sender from the database
+     */
+    public ChatMessage addMessage(ActiveSession session, ActiveSession.Participant sender, String content,
+                                  ChatMessage.MessageType type, String clientMessageId) {
+        ChatMessage message = new ChatMessage();
+        message.setSession(session.toReference());
+        message.setSender(sender.toReference());
+        message.setContent(content);
+        message.setSentAt(LocalDateTime.now());
+        message.setType(type);
+        message.setSeq(messageReplayBuffer.nextSequence(session.sessionId()));
+        message.setClientMessageId(clientMessageId);
         
-        return chatMessageRepository.save(message);
+        return chatMessageWriter.write(message);
+    }
+    
+    /**
+     * The stored message for a client message ID, after its insert was rejected as a duplicate
+     */
+    public Optional<ChatMessage> findMessageByClientId(Long sessionId, String clientMessageId) {
+        chatMessageWriter.flush();
+        return chatMessageRepository.findBySessionIdAndClientMessageId(sessionId, clientMessageId);
     }
     
     /**
      * Get all messages for a chat session
      */
     public List<ChatMessage> getSessionMessages(Long sessionId) {
+        // Make sure write-behind messages are visible before reading history
+        chatMessageWriter.flush();
         ChatSession session = chatSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Chat session not found"));
         return chatMessageRepository.findBySessionOrderBySentAtAsc(session);
     }
     
+    /**
+     * One page of a session's history in chronological order.
+     * Without a cursor the newest messages are returned; "before" pages back
+     * through older messages and "after" fetches anything newer. Cursors are
+     * message IDs and pages are read by (sent_at, id), so each page is one
+     * index range scan no matter how long the chat is.
+     */
+    public List<MessageView> getMessagePage(Long sessionId, Long before, Long after, int limit) {
+        chatMessageWriter.flush();
+        if (after != null) {
+            return chatMessageRepository.findViewsAfter(sessionId, cursorSentAt(sessionId, after), after, Limit.of(limit));
+        }
+        List<MessageView> page = new ArrayList<>(before != null
+                ? chatMessageRepository.findViewsBefore(sessionId, cursorSentAt(sessionId, before), before, Limit.of(limit))
+                : chatMessageRepository.findLatestViews(sessionId, Limit.of(limit)));
+        // Read newest first to stop at the limit, returned oldest first
+        Collections.reverse(page);
+        return page;
+    }
+    
+    /**
+     * The full stored body of one message, for bodies left out of history pages
+     */
+    public Optional<String> getMessageContent(Long sessionId, Long messageId) {
+        chatMessageWriter.flush();
+        return chatMessageRepository.findContent(sessionId, messageId);
+    }
+    
+    private LocalDateTime cursorSentAt(Long sessionId, Long messageId) {
+        return chatMessageRepository.findSentAt(sessionId, messageId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown message cursor " + messageId));
+    }
+    
     /**
      * Assign an agent to a waiting chat session
      */
@@ -113,45 +190,60 @@ public class ChatService {
         }
         
         if (session.getStatus() != ChatSession.SessionStatus.WAITING) {
+            // Keep the queue honest if a stale entry was still in it
+            if (studentQueue.remove(sessionId)) {
+                queueUpdateBroadcaster.removed(sessionId);
+            }
             throw new RuntimeException("Chat session is not in waiting status. Current status: " + session.getStatus());
         }
         
-        // Assign the agent
-        session.setAgent(agent);
-        session.setStatus(ChatSession.SessionStatus.ACTIVE);
-        
-        // Mark agent as unavailable
-        userService.updateAgentAvailability(agent.getId(), false);
-        
-        // Remove from queue using ID comparison (since the session object might be a different instance)
-        boolean removed = studentQueue.removeIf(s -> s.getId().equals(sessionId));
-        System.out.println("Removed from queue: " + removed + ", new queue size: " + studentQueue.size());
+        // Reserve one of the agent's session slots before claiming
+        if (!agentStateRegistry.tryReserve(agent)) {
+            throw new RuntimeException("Agent has reached the maximum of " + agentStateRegistry.getMaxSessions() + " active chats");
+        }
         
+        ChatSession savedSession;
+        try {
+            // Claim the session; only one agent (on any node) can win it
+            if (!studentQueue.claim(sessionId, agent)) {
+                throw new RuntimeException("Chat session is already assigned to another agent");
+            }
+            System.out.println("Claimed from queue, new queue size: " + studentQueue.size());
+            
+            // Assign the agent
+            session.setAgent(agent);
+            session.setStatus(ChatSession.SessionStatus.ACTIVE);
+            
             // Add system message about agent joining
             ChatMessage systemMessage = new ChatMessage();
             systemMessage.setSession(session);
             systemMessage.setSender(agent);
             systemMessage.setContent("Agent " + agent.getFullName() + " has joined the chat.");
             systemMessage.setType(ChatMessage.MessageType.SYSTEM);
-            chatMessageRepository.save(systemMessage);        ChatSession savedSession = chatSessionRepository.save(session);
+            chatMessageRepository.save(systemMessage);
+            savedSession = chatSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            agentStateRegistry.cancelReservation(agent.getId());
+            throw e;
+        }
         
-        // Notify student that agent joined
-        Map<String, Object> notification = new HashMap<>();
-        notification.put("type", "AGENT_JOINED");
-        notification.put("sessionId", sessionId);
-        notification.put("agentName", agent.getFullName());
-        messagingTemplate.convertAndSendToUser(
-            session.getCustomer().getUsername(),
-            "/queue/notifications",
-            notification
-        );
+        // The in-memory registries only learn about the chat once it is committed;
+        // on rollback the reserved slot is given back
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    agentStateRegistry.cancelReservation(agent.getId());
+                    return;
+                }
+                agentStateRegistry.sessionAssigned(agent, savedSession);
+                activeSessionRegistry.register(savedSession);
+                waitTimeEstimator.recordAssignment(sessionId, savedSession.getStartedAt(), studentQueue.size());
+            }
+        });
         
-        // Notify agents about queue update
-        Map<String, Object> queueUpdate = new HashMap<>();
-        queueUpdate.put("type", "STUDENT_ASSIGNED");
-        queueUpdate.put("sessionId", sessionId);
-        queueUpdate.put("queueSize", studentQueue.size());
-        messagingTemplate.convertAndSend("/topic/queue-updates", queueUpdate);
+        // The student, the agent and the queue are notified once this commits
+        eventPublisher.publishEvent(new ChatDomainEvent.AgentAssigned(sessionId, savedSession));
         
         System.out.println("Session " + sessionId + " successfully assigned to agent " + agent.getUsername());
         return savedSession;
@@ -166,15 +258,10 @@ public class ChatService {
                 .orElseThrow(() -> new RuntimeException("Chat session not found"));
         
         // Remove from queue if still in waiting status (e.g., student cancels before agent accepts)
-        if (session.getStatus() == ChatSession.SessionStatus.WAITING) {
-            boolean removed = studentQueue.removeIf(s -> s.getId().equals(sessionId));
+        boolean wasWaiting = session.getStatus() == ChatSession.SessionStatus.WAITING;
+        if (wasWaiting) {
+            boolean removed = studentQueue.remove(sessionId);
             System.out.println("Removed waiting session from queue: " + removed + ", new queue size: " + studentQueue.size());
-            
-            // Notify agents about queue update
-            Map<String, Object> queueUpdate = new HashMap<>();
-            queueUpdate.put("type", "QUEUE_UPDATE");
-            queueUpdate.put("queueSize", studentQueue.size());
-            messagingTemplate.convertAndSend("/topic/queue-updates", queueUpdate);
         }
         
         session.setStatus(ChatSession.SessionStatus.CLOSED);
@@ -188,27 +275,52 @@ public class ChatService {
         systemMessage.setType(ChatMessage.MessageType.SYSTEM);
         chatMessageRepository.save(systemMessage);
         
-        // Make agent available again if there was one
-        if (session.getAgent() != null) {
-            userService.updateAgentAvailability(session.getAgent().getId(), true);
-            
-            // Notify agent about queue status
-            Map<String, Object> queueUpdate = new HashMap<>();
-            queueUpdate.put("type", "QUEUE_UPDATE");
-            queueUpdate.put("queueSize", studentQueue.size());
-            messagingTemplate.convertAndSend("/topic/queue-updates", queueUpdate);
-        }
+        // Routing, replay and dedup state and the agent's slot are only dropped once
+        // the close is committed; on rollback the chat carries on as before
+        Long agentId = session.getAgent() != null ? session.getAgent().getId() : null;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                activeSessionRegistry.evict(sessionId);
+                messageReplayBuffer.evict(sessionId);
+                recentMessageIds.evict(sessionId);
+                if (agentId != null) {
+                    agentStateRegistry.sessionReleased(agentId, sessionId);
+                    waitTimeEstimator.recordClose(sessionId);
+                }
+            }
+        });
         
-        return chatSessionRepository.save(session);
+        ChatSession savedSession = chatSessionRepository.save(session);
+        eventPublisher.publishEvent(new ChatDomainEvent.SessionClosed(
+            sessionId,
+            session.getCustomer().getUsername(),
+            session.getAgent() != null ? session.getAgent().getUsername() : null,
+            wasWaiting
+        ));
+        return savedSession;
     }
     
     /**
      * Get all students waiting in queue
      */
     public List<QueueStudentDTO> getWaitingStudents() {
-        return studentQueue.stream()
-                .map(QueueStudentDTO::fromChatSession)
-                .collect(Collectors.toList());
+        return studentQueue.snapshot();
+    }
+    
+    /**
+     * Get the waiting students with the queue version they reflect.
+     * Unchanged queues return the same cached snapshot.
+     */
+    public QueueSnapshot getQueueSnapshot() {
+        return studentQueue.versionedSnapshot();
+    }
+    
+    /**
+     * Get the version of the last queue delta broadcast to agents
+     */
+    public long getQueueVersion() {
+        return queueUpdateBroadcaster.getVersion();
     }
     
     /**
@@ -218,25 +330,71 @@ public class ChatService {
         return studentQueue.size();
     }
     
+    /**
+     * Drop a queue entry whose session was deleted or is no longer waiting.
+     * Returns false (and keeps the entry) if the session is still WAITING.
+     */
+    public boolean removeStaleQueueEntry(Long sessionId) {
+        if (chatSessionRepository.existsByIdAndStatus(sessionId, ChatSession.SessionStatus.WAITING)) {
+            return false;
+        }
+        if (studentQueue.remove(sessionId)) {
+            queueUpdateBroadcaster.removed(sessionId);
+        }
+        return true;
+    }
+    
     /**
      * Get position of a session in queue
      */
     public int getQueuePosition(Long sessionId) {
-        int position = 0;
-        for (ChatSession session : studentQueue) {
-            position++;
-            if (session.getId().equals(sessionId)) {
-                return position;
+        return studentQueue.position(sessionId); // -1 if not in queue
+    }
+    
+    /**
+     * Get the estimated wait in seconds for a queue position (null until there is data)
+     */
+    public Long getEstimatedWaitSeconds(int position) {
+        return waitTimeEstimator.estimateWaitSeconds(position);
+    }
+    
+    /**
+     * Get active sessions for an agent, served from the in-memory registries.
+     * The database is only read when the agent is not tracked or one of their
+     * sessions is missing from the active session registry.
+     */
+    public List<ActiveSession> getActiveSessionsForAgent(User agent) {
+        Optional<Set<Long>> sessionIds = agentStateRegistry.activeSessionIds(agent.getId());
+        if (sessionIds.isPresent()) {
+            List<Optional<ActiveSession>> cached = sessionIds.get().stream()
+                    .sorted()
+                    .map(activeSessionRegistry::get)
+                    .toList();
+            if (cached.stream().allMatch(Optional::isPresent)) {
+                return cached.stream().map(Optional::get).toList();
             }
         }
-        return -1; // Not in queue
+        
+        List<ActiveSession> sessions = new ArrayList<>();
+        for (ChatSession session : chatSessionRepository.findByAgentAndStatus(agent, ChatSession.SessionStatus.ACTIVE)) {
+            activeSessionRegistry.register(session);
+            activeSessionRegistry.get(session.getId()).ifPresent(sessions::add);
+        }
+        return sessions;
     }
     
     /**
-     * Get active sessions for an agent
+     * Number of chats an agent holds, from memory
      */
-    public List<ChatSession> getActiveSessionsForAgent(User agent) {
-        return chatSessionRepository.findByAgentAndStatus(agent, ChatSession.SessionStatus.ACTIVE);
+    public int getActiveSessionCount(User agent) {
+        return agentStateRegistry.activeSessionCount(agent.getId());
+    }
+    
+    /**
+     * Get how many more sessions an agent can take
+     */
+    public int getRemainingCapacity(User agent) {
+        return agentStateRegistry.remainingCapacity(agent);
     }
     
     /**
@@ -247,6 +405,22 @@ public class ChatService {
         return sessions.isEmpty() ? Optional.empty() : Optional.of(sessions.get(0));
     }
     
+    /**
+     * Get a student's active chat from the active session registry, without the database
+     */
+    public Optional<ActiveSession> findActiveSessionInMemory(String username) {
+        return activeSessionRegistry.sessionsOf(username).stream()
+                .filter(session -> session.customer().username().equals(username))
+                .findFirst();
+    }
+    
+    /**
+     * Get the ID of a student's queued session from the queue's own index
+     */
+    public Optional<Long> findQueuedSession(Long studentId) {
+        return studentQueue.sessionOf(studentId);
+    }
+    
     /**
      * Get waiting session for a student
      */
@@ -255,6 +429,13 @@ public class ChatService {
         return sessions.isEmpty() ? Optional.empty() : Optional.of(sessions.get(0));
     }
     
+    /**
+     * Get the in-memory routing entry of an active chat
+     */
+    public Optional<ActiveSession> getActiveSession(Long sessionId) {
+        return activeSessionRegistry.get(sessionId);
+    }
+    
     /**
      * Get session by ID
      */
@@ -0,0 +1,142 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueSnapshot;
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Multi-node queue engine that uses the chat_sessions table as the source of truth.
+ *
+ * Claims are conditional updates (WAITING -> ACTIVE), so only one node can win a
+ * session. On MySQL the head of the queue is picked with FOR UPDATE SKIP LOCKED,
+ * letting several nodes dequeue at once without blocking each other; other
+ * databases (e.g. H2) fall back to trying the oldest candidates in turn.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.queue.engine", havingValue = "database")
+public class DatabaseChatQueue implements ChatQueue {
+
+    // How many head candidates the fallback path tries per round
+    private static final int CLAIM_BATCH = 8;
+    // Rounds before the fallback gives up; under a repeatable-read snapshot
+    // every round sees the same candidates, so looping longer cannot help
+    private static final int CLAIM_ROUNDS = 3;
+
+    private final ChatSessionRepository chatSessionRepository;
+    private final boolean skipLockedSupported;
+
+    public DatabaseChatQueue(ChatSessionRepository chatSessionRepository, DataSource dataSource) {
+        this.chatSessionRepository = chatSessionRepository;
+        this.skipLockedSupported = supportsSkipLocked(dataSource);
+        System.out.println("Database queue engine enabled, SKIP LOCKED claims: " + skipLockedSupported);
+    }
+
+    @Override
+    public long enqueue(QueueStudentDTO entry) {
+        // The WAITING row is the queue entry, so the session ID doubles as the ticket
+        return entry.getSessionId();
+    }
+
+    @Override
+    public boolean remove(Long sessionId) {
+        // Leaving the WAITING status removes the session from the queue, so it
+        // was queued if the row is still WAITING in this transaction
+        return chatSessionRepository.existsByIdAndStatus(sessionId, ChatSession.SessionStatus.WAITING);
+    }
+
+    @Override
+    @Transactional
+    public boolean claim(Long sessionId, User agent) {
+        return chatSessionRepository.claimWaitingSession(sessionId, agent,
+                ChatSession.SessionStatus.WAITING, ChatSession.SessionStatus.ACTIVE) == 1;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Long> claimNext(User agent) {
+        if (skipLockedSupported) {
+            List<Long> locked = chatSessionRepository.lockNextWaitingSessionIds(1);
+            if (locked.isEmpty()) {
+                return Optional.empty();
+            }
+            // The row is locked by this transaction, so the update cannot lose
+            Long sessionId = locked.get(0);
+            return claim(sessionId, agent) ? Optional.of(sessionId) : Optional.empty();
+        }
+
+        for (int round = 0; round < CLAIM_ROUNDS; round++) {
+            List<Long> candidates = chatSessionRepository.findIdsByStatusInQueueOrder(
+                    ChatSession.SessionStatus.WAITING, PageRequest.of(0, CLAIM_BATCH));
+            if (candidates.isEmpty()) {
+                return Optional.empty();
+            }
+            for (Long sessionId : candidates) {
+                if (claim(sessionId, agent)) {
+                    return Optional.of(sessionId);
+                }
+            }
+            // Every candidate was taken by another node; look again
+        }
+        // Still contended; the caller retries on its next pass
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<QueueStudentDTO> peek() {
+        return chatSessionRepository.findQueueEntriesByStatus(ChatSession.SessionStatus.WAITING, PageRequest.of(0, 1))
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public int position(Long sessionId) {
+        long position = chatSessionRepository.countQueuePosition(sessionId, ChatSession.SessionStatus.WAITING);
+        return position == 0 ? -1 : (int) position;
+    }
+
+    @Override
+    public Optional<Long> sessionOf(Long customerId) {
+        return chatSessionRepository.findIdsByCustomerIdAndStatus(customerId, ChatSession.SessionStatus.WAITING)
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public int size() {
+        return (int) chatSessionRepository.countByStatus(ChatSession.SessionStatus.WAITING);
+    }
+
+    @Override
+    public List<QueueStudentDTO> snapshot() {
+        return chatSessionRepository.findQueueEntriesByStatusOrderByStartedAtAsc(ChatSession.SessionStatus.WAITING);
+    }
+
+    @Override
+    public QueueSnapshot versionedSnapshot() {
+        // Other nodes change the queue too, so the version is derived from the contents
+        List<QueueStudentDTO> waiting = snapshot();
+        return new QueueSnapshot(Integer.toUnsignedLong(waiting.hashCode()), List.copyOf(waiting));
+    }
+
+    private static boolean supportsSkipLocked(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            String product = connection.getMetaData().getDatabaseProductName();
+            return product != null && product.toLowerCase().contains("mysql");
+        } catch (SQLException e) {
+            System.err.println("Could not detect database product, using fallback claims: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueSnapshot;
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-node queue engine backed by an indexed in-memory queue.
+ *
+ * A claimed session stays queued until the claiming transaction commits, so a
+ * rollback leaves the student where they were. Concurrent claims of the same
+ * head block on the row and then lose the conditional update.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.queue.engine", havingValue = "memory", matchIfMissing = true)
+@RequiredArgsConstructor
+public class InMemoryChatQueue implements ChatQueue {
+
+    private final ChatSessionRepository chatSessionRepository;
+
+    // Queue for students waiting for an agent, indexed by session ID
+    private final WaitingQueue<QueueStudentDTO> studentQueue = new WaitingQueue<>(QueueStudentDTO::getSessionId);
+    // Student user ID -> their queued session
+    private final Map<Long, Long> sessionsByCustomer = new ConcurrentHashMap<>();
+
+    @Override
+    public long enqueue(QueueStudentDTO entry) {
+        if (entry.getCustomerId() != null) {
+            sessionsByCustomer.put(entry.getCustomerId(), entry.getSessionId());
+        }
+        return studentQueue.add(entry);
+    }
+
+    @Override
+    public boolean remove(Long sessionId) {
+        return dequeue(sessionId);
+    }
+
+    @Override
+    @Transactional
+    public boolean claim(Long sessionId, User agent) {
+        int updated = chatSessionRepository.claimWaitingSession(sessionId, agent,
+                ChatSession.SessionStatus.WAITING, ChatSession.SessionStatus.ACTIVE);
+        if (updated == 1) {
+            removeAfterCommit(sessionId);
+            return true;
+        }
+        // No longer WAITING in the database, so the entry is stale
+        dequeue(sessionId);
+        return false;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Long> claimNext(User agent) {
+        Optional<QueueStudentDTO> head;
+        while ((head = studentQueue.peek()).isPresent()) {
+            Long sessionId = head.get().getSessionId();
+            if (claim(sessionId, agent)) {
+                return Optional.of(sessionId);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<QueueStudentDTO> peek() {
+        return studentQueue.peek();
+    }
+
+    @Override
+    public int position(Long sessionId) {
+        return studentQueue.position(sessionId);
+    }
+
+    @Override
+    public Optional<Long> sessionOf(Long customerId) {
+        return Optional.ofNullable(sessionsByCustomer.get(customerId));
+    }
+
+    @Override
+    public int size() {
+        return studentQueue.size();
+    }
+
+    @Override
+    public List<QueueStudentDTO> snapshot() {
+        return studentQueue.snapshot();
+    }
+
+    @Override
+    public QueueSnapshot versionedSnapshot() {
+        WaitingQueue.Snapshot<QueueStudentDTO> snapshot = studentQueue.versionedSnapshot();
+        return new QueueSnapshot(snapshot.version(), snapshot.entries());
+    }
+
+    private void removeAfterCommit(Long sessionId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dequeue(sessionId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dequeue(sessionId);
+            }
+        });
+    }
+
+    private boolean dequeue(Long sessionId) {
+        Optional<QueueStudentDTO> removed = studentQueue.remove(sessionId);
+        removed.map(QueueStudentDTO::getCustomerId)
+                .ifPresent(customerId -> sessionsByCustomer.remove(customerId, sessionId));
+        return removed.isPresent();
+    }
+
+    /**
+     * Get the ticket a queued session was given, or -1 if it is not queued
+     */
+    public long ticket(Long sessionId) {
+        return studentQueue.ticket(sessionId);
+    }
+
+    /**
+     * Get the highest ticket handed out so far
+     */
+    public long lastTicket() {
+        return studentQueue.lastTicket();
+    }
+}
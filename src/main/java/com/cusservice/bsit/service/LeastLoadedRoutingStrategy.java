@@ -0,0 +1,29 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Routes to the agent with the fewest active sessions, longest idle first on ties
+ */
+@Component
+public class LeastLoadedRoutingStrategy implements RoutingStrategy {
+
+    static final Comparator<AgentState> LEAST_LOADED = Comparator
+            .comparingInt(AgentState::getActiveSessions)
+            .thenComparingLong(AgentState::getIdleSince);
+
+    @Override
+    public String name() {
+        return "least-loaded";
+    }
+
+    @Override
+    public Optional<AgentState> select(QueueStudentDTO session, List<AgentState> candidates) {
+        return candidates.stream().min(LEAST_LOADED);
+    }
+}
@@ -0,0 +1,25 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Routes to the agent who has been idle the longest
+ */
+@Component
+public class LongestIdleRoutingStrategy implements RoutingStrategy {
+
+    @Override
+    public String name() {
+        return "longest-idle";
+    }
+
+    @Override
+    public Optional<AgentState> select(QueueStudentDTO session, List<AgentState> candidates) {
+        return candidates.stream().min(Comparator.comparingLong(AgentState::getIdleSince));
+    }
+}
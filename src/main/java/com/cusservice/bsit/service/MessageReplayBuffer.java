@@ -0,0 +1,148 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import com.cusservice.bsit.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session message sequence numbers and a ring of recently delivered frames.
+ *
+ * Every message gets the next sequence number of its session, and the frame
+ * sent to the participants is kept in a fixed-size ring. A client that
+ * reconnects sends the last sequence it has seen and gets just the frames
+ * after it. If the ring has already rolled past that point, or this node never
+ * saw the start of the gap (e.g. after a restart), the client is told to catch
+ * up from the history API instead.
+ */
+@Service
+public class MessageReplayBuffer {
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageWriter chatMessageWriter;
+    private final int capacity;
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    private final Counter replayed;
+    private final Counter resyncs;
+
+    public MessageReplayBuffer(ChatMessageRepository chatMessageRepository,
+                               ChatMessageWriter chatMessageWriter,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.replay.capacity:256}") int capacity) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageWriter = chatMessageWriter;
+        this.capacity = capacity;
+
+        this.replayed = Counter.builder("chat.replay.frames")
+                .description("Chat frames replayed to reconnecting clients")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("chat.replay.resyncs")
+                .description("Reconnects that had to fall back to the history API")
+                .register(meterRegistry);
+        Gauge.builder("chat.replay.sessions", rings, Map::size)
+                .description("Chat sessions with a replay ring")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Next sequence number for a session. The first call on this node
+     * continues from the highest sequence already stored.
+     */
+    public long nextSequence(Long sessionId) {
+        return rings.computeIfAbsent(sessionId, this::newRing).next();
+    }
+
+    /**
+     * Remember a frame that has been sent to the session's participants
+     */
+    public void record(ChatMessageFrame frame) {
+        Ring ring = rings.get(frame.sessionId());
+        if (ring != null && frame.seq() != null) {
+            ring.record(frame);
+        }
+    }
+
+    /**
+     * Frames after the given sequence number, oldest first, or empty if they
+     * can no longer be replayed from memory
+     */
+    public Optional<List<ChatMessageFrame>> since(Long sessionId, long lastSeq) {
+        Ring ring = rings.get(sessionId);
+        Optional<List<ChatMessageFrame>> frames = ring != null ? ring.since(lastSeq) : Optional.empty();
+        if (frames.isPresent()) {
+            replayed.increment(frames.get().size());
+        } else {
+            resyncs.increment();
+        }
+        return frames;
+    }
+
+    public void evict(Long sessionId) {
+        rings.remove(sessionId);
+    }
+
+    private Ring newRing(Long sessionId) {
+        // Messages still in the write-behind journal must count towards the starting point
+        chatMessageWriter.flush();
+        return new Ring(capacity, chatMessageRepository.findMaxSeq(sessionId).orElse(0L));
+    }
+
+    private static final class Ring {
+
+        private final ChatMessageFrame[] frames;
+        // First sequence number handed out by this ring; nothing before it can be replayed
+        private final long firstSeq;
+        private long lastSeq;
+
+        Ring(int capacity, long startAfter) {
+            this.frames = new ChatMessageFrame[capacity];
+            this.firstSeq = startAfter + 1;
+            this.lastSeq = startAfter;
+        }
+
+        synchronized long next() {
+            return ++lastSeq;
+        }
+
+        synchronized void record(ChatMessageFrame frame) {
+            frames[slot(frame.seq())] = frame;
+        }
+
+        synchronized Optional<List<ChatMessageFrame>> since(long after) {
+            if (after >= lastSeq) {
+                return Optional.of(List.of());
+            }
+            if (after + 1 < firstSeq || lastSeq - after > frames.length) {
+                return Optional.empty();
+            }
+            List<ChatMessageFrame> missed = new ArrayList<>();
+            for (long seq = after + 1; seq <= lastSeq; seq++) {
+                ChatMessageFrame frame = frames[slot(seq)];
+                if (frame != null && frame.seq() > seq) {
+                    // Overwritten by a newer lap while we were reading
+                    return Optional.empty();
+                }
+                // A missing slot is a message whose insert failed and was never sent.
+                // Sends and resumes for one chat share an inbound lane, so none are in flight.
+                if (frame != null && frame.seq() == seq) {
+                    missed.add(frame);
+                }
+            }
+            return Optional.of(missed);
+        }
+
+        private int slot(long seq) {
+            return (int) (seq % frames.length);
+        }
+    }
+}
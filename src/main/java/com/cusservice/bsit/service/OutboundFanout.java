@@ -0,0 +1,61 @@
+package com.cusservice.bsit.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends one payload to several users' personal queues.
+ *
+ * The payload is encoded to JSON once and the same Message&lt;byte[]&gt; is
+ * handed to every destination, instead of convertAndSendToUser running the
+ * message converter again for each recipient.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboundFanout {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Send the payload to /user/{username}{destination} for each user; null usernames are skipped
+     */
+    public void sendToUsers(String destination, Object payload, String... usernames) {
+        Message<byte[]> message = encode(payload);
+        for (String username : usernames) {
+            if (username != null) {
+                // The template copies the (immutable) headers and keeps the encoded body
+                messagingTemplate.send(userDestination(username, destination), message);
+            }
+        }
+    }
+
+    public void sendToUser(String username, String destination, Object payload) {
+        sendToUsers(destination, payload, username);
+    }
+
+    Message<byte[]> encode(Object payload) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not encode " + payload.getClass().getSimpleName(), e);
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    private String userDestination(String username, String destination) {
+        // Same encoding as convertAndSendToUser
+        return messagingTemplate.getUserDestinationPrefix() + username.replace("/", "%2F") + destination;
+    }
+}
@@ -0,0 +1,232 @@
+package com.cusservice.bsit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typing indicators and online/away presence, kept entirely in memory.
+ *
+ * Clients report typing and away changes as often as they like; the service
+ * only records the latest state. A scheduled flush compares that state with
+ * what was last sent and tells the other participant of each chat about real
+ * changes only, so each user and chat produces at most one update per
+ * interval however many frames came in. Presence is derived from STOMP
+ * connect/disconnect events, and nothing here touches the database.
+ */
+@Service
+public class PresenceService {
+
+    public enum Status {
+        ONLINE,
+        AWAY,
+        OFFLINE
+    }
+
+    // Open STOMP session IDs and the away flag reported by the client
+    private record Presence(Set<String> connections, boolean away) {
+    }
+
+    private final ActiveSessionRegistry activeSessionRegistry;
+    private final ChatNotificationService notificationService;
+    private final long typingTtlMillis;
+    private final Counter typingUpdates;
+    private final Counter presenceUpdates;
+
+    // Username -> presence, only modified inside compute()
+    private final Map<String, Presence> presence = new ConcurrentHashMap<>();
+    // Users whose presence may have changed since the last flush
+    private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+    // Session ID -> typing username -> time their typing state expires
+    private final Map<Long, Map<String, Long>> typing = new ConcurrentHashMap<>();
+
+    // What the other side was last told; only used by the flush
+    private final Map<String, Status> sentStatus = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> sentTyping = new ConcurrentHashMap<>();
+
+    public PresenceService(ActiveSessionRegistry activeSessionRegistry,
+                           ChatNotificationService notificationService,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.presence.typing-ttl-ms:5000}") long typingTtlMillis) {
+        this.activeSessionRegistry = activeSessionRegistry;
+        this.notificationService = notificationService;
+        this.typingTtlMillis = typingTtlMillis;
+        this.typingUpdates = Counter.builder("chat.presence.updates")
+                .tag("kind", "typing")
+                .description("Typing and presence changes sent to chat participants")
+                .register(meterRegistry);
+        this.presenceUpdates = Counter.builder("chat.presence.updates")
+                .tag("kind", "presence")
+                .description("Typing and presence changes sent to chat participants")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.online", presence, Map::size)
+                .description("Users with at least one open connection")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null) {
+            return;
+        }
+        presence.compute(user.getName(), (name, current) -> {
+            Set<String> open = current != null ? current.connections() : new HashSet<>();
+            open.add(sessionId);
+            // A new connection starts out online even if another tab was away
+            return new Presence(open, false);
+        });
+        dirtyUsers.add(user.getName());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user == null) {
+            return;
+        }
+        presence.computeIfPresent(user.getName(), (name, current) -> {
+            current.connections().remove(event.getSessionId());
+            return current.connections().isEmpty() ? null : current;
+        });
+        dirtyUsers.add(user.getName());
+    }
+
+    /**
+     * Record that a connected user's page went to the background or came back
+     */
+    public void setAway(String username, boolean away) {
+        Presence updated = presence.computeIfPresent(username,
+                (name, current) -> new Presence(current.connections(), away));
+        if (updated != null) {
+            dirtyUsers.add(username);
+        }
+    }
+
+    public Status statusOf(String username) {
+        Presence current = presence.get(username);
+        if (current == null) {
+            return Status.OFFLINE;
+        }
+        return current.away() ? Status.AWAY : Status.ONLINE;
+    }
+
+    /**
+     * Record a typing report. Typing stops on its own unless the client
+     * repeats it within the typing TTL.
+     */
+    public void setTyping(Long sessionId, String username, boolean isTyping) {
+        setTyping(sessionId, username, isTyping, System.currentTimeMillis());
+    }
+
+    void setTyping(Long sessionId, String username, boolean isTyping, long nowMillis) {
+        if (isTyping) {
+            typing.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                    .put(username, nowMillis + typingTtlMillis);
+        } else {
+            Map<String, Long> typers = typing.get(sessionId);
+            if (typers != null) {
+                typers.remove(username);
+            }
+        }
+    }
+
+    /**
+     * Send the typing and presence changes since the last flush
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-ms:1000}")
+    public void flush() {
+        flush(System.currentTimeMillis());
+    }
+
+    void flush(long nowMillis) {
+        flushTyping(nowMillis);
+        flushPresence();
+    }
+
+    private void flushTyping(long nowMillis) {
+        Set<Long> sessionIds = new HashSet<>(typing.keySet());
+        sessionIds.addAll(sentTyping.keySet());
+
+        for (Long sessionId : sessionIds) {
+            Optional<ActiveSession> active = activeSessionRegistry.get(sessionId);
+            if (active.isEmpty()) {
+                // The chat ended; nobody is left to tell
+                typing.remove(sessionId);
+                sentTyping.remove(sessionId);
+                continue;
+            }
+
+            Set<String> current = new HashSet<>();
+            Map<String, Long> typers = typing.get(sessionId);
+            if (typers != null) {
+                typers.values().removeIf(expiry -> expiry <= nowMillis);
+                typers.forEach((username, expiry) -> {
+                    if (presence.containsKey(username)) {
+                        current.add(username);
+                    }
+                });
+                if (typers.isEmpty()) {
+                    typing.remove(sessionId, typers);
+                }
+            }
+
+            Set<String> sent = sentTyping.getOrDefault(sessionId, Set.of());
+            for (String username : current) {
+                if (!sent.contains(username)) {
+                    sendTyping(active.get(), username, true);
+                }
+            }
+            for (String username : sent) {
+                if (!current.contains(username)) {
+                    sendTyping(active.get(), username, false);
+                }
+            }
+            if (current.isEmpty()) {
+                sentTyping.remove(sessionId);
+            } else {
+                sentTyping.put(sessionId, current);
+            }
+        }
+    }
+
+    private void flushPresence() {
+        for (String username : dirtyUsers) {
+            dirtyUsers.remove(username);
+            Status status = statusOf(username);
+            Status previous = status == Status.OFFLINE ? sentStatus.remove(username) : sentStatus.put(username, status);
+            if (status == (previous != null ? previous : Status.OFFLINE)) {
+                // Changed back within the interval, or only another tab opened
+                continue;
+            }
+            for (ActiveSession session : activeSessionRegistry.sessionsOf(username)) {
+                session.counterpart(username).ifPresent(other -> {
+                    notificationService.sendPresence(other.username(), session.sessionId(), username, status.name());
+                    presenceUpdates.increment();
+                });
+            }
+        }
+    }
+
+    private void sendTyping(ActiveSession session, String username, boolean isTyping) {
+        session.counterpart(username).ifPresent(other -> {
+            notificationService.sendTyping(other.username(), session.sessionId(), username, isTyping);
+            typingUpdates.increment();
+        });
+    }
+}
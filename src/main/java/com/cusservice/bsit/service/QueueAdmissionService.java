@@ -0,0 +1,194 @@
+package com.cusservice.bsit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for /app/chat/start.
+ *
+ * Runs after the in-memory check for a chat the student already has and
+ * before any database work (with chat.queue.engine=memory): each user gets a
+ * token bucket for start requests, and once the queue reaches chat.admission.max-queue-length new
+ * students are either turned away with a retry hint ("reject") or put on a
+ * bounded callback list and invited back when a spot opens ("callback").
+ */
+@Service
+public class QueueAdmissionService {
+
+    public enum Decision {
+        ADMITTED,
+        RATE_LIMITED,
+        QUEUE_FULL,
+        CALLBACK_SCHEDULED
+    }
+
+    // How long an invited user keeps their reserved spot
+    private static final long OFFER_TTL_MILLIS = 30_000;
+
+    private final ChatService chatService;
+    private final ChatNotificationService notificationService;
+    private final AbandonedSessionMonitor connectionMonitor;
+
+    private final int maxQueueLength;
+    private final int startBurst;
+    private final long startRefillSeconds;
+    private final boolean callbackMode;
+    private final int callbackCapacity;
+    private final int retryAfterSeconds;
+
+    private final Map<String, TokenBucket> startBuckets = new ConcurrentHashMap<>();
+    // Users waiting for a callback, in arrival order; guarded by itself
+    private final Set<String> callbacks = new LinkedHashSet<>();
+    // Invited users -> offer expiry time
+    private final Map<String, Long> offers = new ConcurrentHashMap<>();
+
+    private final Counter rateLimited;
+    private final Counter queueFull;
+    private final Counter callbacksScheduled;
+    private final Counter callbacksOffered;
+
+    public QueueAdmissionService(ChatService chatService,
+                                 ChatNotificationService notificationService,
+                                 AbandonedSessionMonitor connectionMonitor,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${chat.admission.max-queue-length:200}") int maxQueueLength,
+                                 @Value("${chat.admission.start-burst:3}") int startBurst,
+                                 @Value("${chat.admission.start-refill-seconds:10}") long startRefillSeconds,
+                                 @Value("${chat.admission.overflow:reject}") String overflow,
+                                 @Value("${chat.admission.callback-capacity:500}") int callbackCapacity,
+                                 @Value("${chat.admission.retry-after-seconds:30}") int retryAfterSeconds) {
+        this.chatService = chatService;
+        this.notificationService = notificationService;
+        this.connectionMonitor = connectionMonitor;
+        this.maxQueueLength = maxQueueLength;
+        this.startBurst = startBurst;
+        this.startRefillSeconds = startRefillSeconds;
+        this.callbackMode = "callback".equalsIgnoreCase(overflow);
+        this.callbackCapacity = callbackCapacity;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        this.rateLimited = Counter.builder("chat.admission.rejected")
+                .tag("reason", "rate-limited")
+                .description("Chat start requests from students without a chat turned away by their rate limit")
+                .register(meterRegistry);
+        this.queueFull = Counter.builder("chat.admission.rejected")
+                .tag("reason", "queue-full")
+                .description("Chat start requests from students without a chat turned away because the queue was full")
+                .register(meterRegistry);
+        this.callbacksScheduled = Counter.builder("chat.admission.callbacks.scheduled")
+                .description("Students put on the callback list because the queue was full")
+                .register(meterRegistry);
+        this.callbacksOffered = Counter.builder("chat.admission.callbacks.offered")
+                .description("Students invited back after a queue spot opened")
+                .register(meterRegistry);
+        Gauge.builder("chat.admission.callbacks.pending", callbacks, this::pendingCallbacks)
+                .description("Students waiting for a callback")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decide whether a start request may go on to create a session.
+     * Called only for students with no chat in memory; uses only in-memory
+     * state, except that the database queue engine counts the queue in SQL.
+     */
+    public Decision admit(String username) {
+        TokenBucket bucket = startBuckets.computeIfAbsent(username,
+                name -> new TokenBucket(startBurst, startRefillSeconds, TimeUnit.SECONDS));
+        if (!bucket.tryAcquire()) {
+            rateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+
+        // Invited back from the callback list; the spot was kept for them
+        if (offers.remove(username) != null) {
+            return Decision.ADMITTED;
+        }
+        if (maxQueueLength <= 0) {
+            return Decision.ADMITTED;
+        }
+
+        boolean full;
+        synchronized (callbacks) {
+            // Nobody jumps ahead of students already waiting for a callback
+            full = !callbacks.isEmpty() || chatService.getQueueSize() + offers.size() >= maxQueueLength;
+            if (full && callbackMode && (callbacks.contains(username) || callbacks.size() < callbackCapacity)) {
+                if (callbacks.add(username)) {
+                    callbacksScheduled.increment();
+                }
+                return Decision.CALLBACK_SCHEDULED;
+            }
+        }
+        if (full) {
+            queueFull.increment();
+            return Decision.QUEUE_FULL;
+        }
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * How long a rejected student should wait before trying again
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Invite students on the callback list back as queue spots open up
+     */
+    @Scheduled(fixedDelayString = "${chat.admission.callback-interval-ms:2000}")
+    public void offerCallbacks() {
+        long now = System.currentTimeMillis();
+        offers.values().removeIf(expiry -> expiry < now);
+        if (!callbackMode) {
+            return;
+        }
+
+        int free = maxQueueLength - chatService.getQueueSize() - offers.size();
+        List<String> invited = new ArrayList<>();
+        synchronized (callbacks) {
+            Iterator<String> waiting = callbacks.iterator();
+            while (free > 0 && waiting.hasNext()) {
+                String username = waiting.next();
+                waiting.remove();
+                // Users who left in the meantime simply lose their place
+                if (connectionMonitor.isConnected(username)) {
+                    offers.put(username, now + OFFER_TTL_MILLIS);
+                    invited.add(username);
+                    free--;
+                }
+            }
+        }
+        for (String username : invited) {
+            notificationService.sendCallbackReady(username);
+            callbacksOffered.increment();
+        }
+    }
+
+    /**
+     * Drop rate-limit state for users whose bucket has refilled
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        startBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private double pendingCallbacks(Set<String> callbacks) {
+        synchronized (callbacks) {
+            return callbacks.size();
+        }
+    }
+}
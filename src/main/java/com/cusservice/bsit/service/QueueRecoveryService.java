@@ -0,0 +1,102 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the in-memory waiting queue in line with the WAITING rows in chat_sessions.
+ *
+ * The queue is rebuilt in startedAt order when the application starts, and a
+ * periodic reconciliation repairs drift one entry at a time, so normal queue
+ * traffic never waits on it.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.queue.engine", havingValue = "memory", matchIfMissing = true)
+@RequiredArgsConstructor
+public class QueueRecoveryService {
+
+    private final InMemoryChatQueue chatQueue;
+    private final ChatSessionRepository chatSessionRepository;
+    private final QueueUpdateBroadcaster queueUpdateBroadcaster;
+
+    // Sessions found WAITING in the database but missing from memory on the last run
+    private Set<Long> missingLastRun = new HashSet<>();
+
+    /**
+     * Rebuild the queue from the database once the application is ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildQueue() {
+        List<QueueStudentDTO> waiting = loadWaitingEntries();
+        for (QueueStudentDTO entry : waiting) {
+            chatQueue.enqueue(entry);
+        }
+        System.out.println("Queue recovery: restored " + waiting.size() + " waiting sessions, queue size: "
+                + chatQueue.size());
+    }
+
+    /**
+     * Repair differences between the database and the in-memory queue
+     */
+    @Scheduled(initialDelayString = "${chat.queue.reconcile-interval-ms:60000}",
+               fixedDelayString = "${chat.queue.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        // Entries queued after this point may not be visible in the query below yet
+        long watermark = chatQueue.lastTicket();
+        List<QueueStudentDTO> waiting = loadWaitingEntries();
+        Set<Long> waitingIds = waiting.stream()
+                .map(QueueStudentDTO::getSessionId)
+                .collect(Collectors.toSet());
+
+        int removed = 0;
+        for (QueueStudentDTO entry : chatQueue.snapshot()) {
+            Long sessionId = entry.getSessionId();
+            long ticket = chatQueue.ticket(sessionId);
+            if (!waitingIds.contains(sessionId) && ticket > 0 && ticket <= watermark
+                    && chatQueue.remove(sessionId)) {
+                queueUpdateBroadcaster.removed(sessionId);
+                removed++;
+            }
+        }
+
+        // A session can be briefly missing while an assignment is still committing,
+        // so only restore entries that were also missing on the previous run
+        int restored = 0;
+        Set<Long> missingNow = new HashSet<>();
+        for (QueueStudentDTO entry : waiting) {
+            Long sessionId = entry.getSessionId();
+            if (chatQueue.ticket(sessionId) > 0) {
+                continue;
+            }
+            if (missingLastRun.contains(sessionId)) {
+                chatQueue.enqueue(entry);
+                queueUpdateBroadcaster.queued(entry);
+                restored++;
+            } else {
+                missingNow.add(sessionId);
+            }
+        }
+        missingLastRun = missingNow;
+
+        if (removed > 0 || restored > 0) {
+            System.out.println("Queue reconciliation: removed " + removed + " stale, restored " + restored
+                    + " missing, queue size: " + chatQueue.size());
+        }
+    }
+
+    private List<QueueStudentDTO> loadWaitingEntries() {
+        return chatSessionRepository.findQueueEntriesByStatusOrderByStartedAtAsc(ChatSession.SessionStatus.WAITING);
+    }
+}
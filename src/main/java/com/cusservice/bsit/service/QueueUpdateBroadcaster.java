@@ -0,0 +1,103 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces queue mutations into one versioned delta per window on /topic/queue-updates.
+ *
+ * Instead of a frame (and a REST refetch by every agent) per mutation, agents
+ * receive {type: QUEUE_DELTA, version, added, removed, queueSize} at most once
+ * per chat.queue.broadcast-window-ms. A client that sees a version gap reloads
+ * /api/chat/queue, which reports the last broadcast version.
+ */
+@Service
+public class QueueUpdateBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatQueue chatQueue;
+    private final Counter eventsIn;
+    private final Counter framesOut;
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Pending mutations for the current window, guarded by "this"
+    private Map<Long, QueueStudentDTO> added = new LinkedHashMap<>();
+    private Set<Long> removed = new LinkedHashSet<>();
+
+    public QueueUpdateBroadcaster(SimpMessagingTemplate messagingTemplate, ChatQueue chatQueue, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.chatQueue = chatQueue;
+        this.eventsIn = Counter.builder("chat.queue.updates.events")
+                .description("Queue mutations submitted for broadcast")
+                .register(meterRegistry);
+        this.framesOut = Counter.builder("chat.queue.updates.frames")
+                .description("Coalesced queue delta frames sent to agents")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A student joined the queue
+     */
+    public synchronized void queued(QueueStudentDTO entry) {
+        eventsIn.increment();
+        removed.remove(entry.getSessionId());
+        added.put(entry.getSessionId(), entry);
+    }
+
+    /**
+     * A student left the queue (assigned, cancelled or cleaned up)
+     */
+    public synchronized void removed(Long sessionId) {
+        eventsIn.increment();
+        // Joined and left within one window: agents never need to hear about it
+        if (added.remove(sessionId) == null) {
+            removed.add(sessionId);
+        }
+    }
+
+    /**
+     * Version of the last delta that was sent
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.queue.broadcast-window-ms:200}")
+    public void flush() {
+        Map<Long, QueueStudentDTO> addedNow;
+        Set<Long> removedNow;
+        synchronized (this) {
+            if (added.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            addedNow = added;
+            removedNow = removed;
+            added = new LinkedHashMap<>();
+            removed = new LinkedHashSet<>();
+        }
+
+        List<QueueStudentDTO> addedList = new ArrayList<>(addedNow.values());
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("type", "QUEUE_DELTA");
+        delta.put("version", version.incrementAndGet());
+        delta.put("added", addedList);
+        delta.put("removed", new ArrayList<>(removedNow));
+        delta.put("queueSize", chatQueue.size());
+        messagingTemplate.convertAndSend("/topic/queue-updates", delta);
+        framesOut.increment();
+    }
+}
@@ -0,0 +1,130 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client message IDs seen recently, per chat session.
+ *
+ * A retried send finds its original frame here and is answered with it
+ * instead of a second insert and fan-out. Each session remembers at most
+ * chat.dedup.per-session-capacity IDs for chat.dedup.ttl-seconds; retries
+ * older than that are caught by the unique index on
+ * (session_id, client_message_id).
+ */
+@Service
+public class RecentMessageIds {
+
+    // frame is null while the original send is still being saved
+    private record Entry(ChatMessageFrame frame, long expiresAt) {
+    }
+
+    private final int perSessionCapacity;
+    private final long ttlMillis;
+    private final Map<Long, LinkedHashMap<String, Entry>> sessions = new ConcurrentHashMap<>();
+
+    public RecentMessageIds(@Value("${chat.dedup.per-session-capacity:512}") int perSessionCapacity,
+                            @Value("${chat.dedup.ttl-seconds:600}") long ttlSeconds) {
+        this.perSessionCapacity = perSessionCapacity;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Claim a client message ID. Returns false if it was already seen, in
+     * which case the caller must not save or deliver the message again.
+     */
+    public boolean reserve(Long sessionId, String clientMessageId) {
+        LinkedHashMap<String, Entry> ids = sessions.computeIfAbsent(sessionId, id -> newIdMap());
+        long now = System.currentTimeMillis();
+        synchronized (ids) {
+            purgeExpired(ids, now);
+            if (ids.containsKey(clientMessageId)) {
+                return false;
+            }
+            ids.put(clientMessageId, new Entry(null, now + ttlMillis));
+            return true;
+        }
+    }
+
+    /**
+     * The frame sent for a message, once it has been saved
+     */
+    public Optional<ChatMessageFrame> completed(Long sessionId, String clientMessageId) {
+        LinkedHashMap<String, Entry> ids = sessions.get(sessionId);
+        if (ids == null) {
+            return Optional.empty();
+        }
+        synchronized (ids) {
+            Entry entry = ids.get(clientMessageId);
+            return entry != null ? Optional.ofNullable(entry.frame()) : Optional.empty();
+        }
+    }
+
+    public void complete(Long sessionId, String clientMessageId, ChatMessageFrame frame) {
+        LinkedHashMap<String, Entry> ids = sessions.get(sessionId);
+        if (ids == null) {
+            return;
+        }
+        synchronized (ids) {
+            Entry entry = ids.get(clientMessageId);
+            if (entry != null) {
+                ids.put(clientMessageId, new Entry(frame, entry.expiresAt()));
+            }
+        }
+    }
+
+    /**
+     * Forget a claim whose send failed, so the client's retry is processed
+     */
+    public void release(Long sessionId, String clientMessageId) {
+        LinkedHashMap<String, Entry> ids = sessions.get(sessionId);
+        if (ids != null) {
+            synchronized (ids) {
+                ids.remove(clientMessageId);
+            }
+        }
+    }
+
+    public void evict(Long sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * Drop expired IDs, and sessions with none left
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(ids -> {
+            synchronized (ids) {
+                purgeExpired(ids, now);
+                return ids.isEmpty();
+            }
+        });
+    }
+
+    private LinkedHashMap<String, Entry> newIdMap() {
+        return new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > perSessionCapacity;
+            }
+        };
+    }
+
+    // Insertion order is expiry order, so only the head needs checking
+    private static void purgeExpired(LinkedHashMap<String, Entry> ids, long now) {
+        Iterator<Entry> entries = ids.values().iterator();
+        while (entries.hasNext() && entries.next().expiresAt() < now) {
+            entries.remove();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Picks the agent a queued session should be pushed to
+ */
+public interface RoutingStrategy {
+
+    /**
+     * Name used to select the strategy with chat.dispatch.strategy
+     */
+    String name();
+
+    /**
+     * Choose one of the routable candidates for the session, if any fits
+     */
+    Optional<AgentState> select(QueueStudentDTO session, List<AgentState> candidates);
+}
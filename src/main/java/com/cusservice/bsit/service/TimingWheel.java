@@ -0,0 +1,106 @@
+package com.cusservice.bsit.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed timing wheel for many keyed, cancellable timeouts.
+ *
+ * Each timeout is dropped into the bucket for its deadline tick, so scheduling
+ * and cancelling are O(1) and one clock drives every timeout instead of one
+ * scheduled task per key. Deadlines further out than one revolution simply
+ * stay in their bucket until a later pass. The caller drives the wheel by
+ * calling {@link #advance(long)} about once per tick.
+ */
+public class TimingWheel<K> {
+
+    private final long tickMillis;
+    private final List<Set<K>> buckets;
+    // Key -> tick whose bucket holds its timeout
+    private final Map<K, Long> ticks = new HashMap<>();
+
+    // Last tick whose bucket has been processed
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new LinkedHashSet<>());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedule a key to expire after the delay, replacing any earlier timeout for it
+     */
+    public synchronized void schedule(K key, long delayMillis, long nowMillis) {
+        cancel(key);
+        long deadline = nowMillis + Math.max(0, delayMillis);
+        // Never place a timeout into a bucket that has already been passed
+        long tick = Math.max(tickOf(deadline), currentTick + 1);
+        ticks.put(key, tick);
+        bucket(tick).add(key);
+    }
+
+    /**
+     * Cancel a pending timeout. Returns true if one was pending.
+     */
+    public synchronized boolean cancel(K key) {
+        Long tick = ticks.remove(key);
+        if (tick == null) {
+            return false;
+        }
+        bucket(tick).remove(key);
+        return true;
+    }
+
+    public synchronized boolean isScheduled(K key) {
+        return ticks.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return ticks.size();
+    }
+
+    /**
+     * Process every tick up to now and return the keys whose deadline has passed
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        // After a long pause one pass over the wheel covers every bucket
+        long fromTick = Math.max(currentTick + 1, targetTick - buckets.size() + 1);
+        for (long tick = fromTick; tick <= targetTick; tick++) {
+            Iterator<K> keys = bucket(tick).iterator();
+            while (keys.hasNext()) {
+                K key = keys.next();
+                // Keys due in a later revolution share the bucket and stay put
+                if (ticks.get(key) <= tick) {
+                    keys.remove();
+                    ticks.remove(key);
+                    expired.add(key);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        return expired;
+    }
+
+    // First tick at or after the deadline, so a bucket is only processed once its timeouts are due
+    private long tickOf(long deadline) {
+        return (deadline + tickMillis - 1) / tickMillis;
+    }
+
+    private Set<K> bucket(long tick) {
+        return buckets.get((int) Math.floorMod(tick, (long) buckets.size()));
+    }
+}
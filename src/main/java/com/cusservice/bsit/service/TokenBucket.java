@@ -0,0 +1,65 @@
+package com.cusservice.bsit.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * Instead of a token count and a refill timestamp, the bucket keeps a single
+ * "theoretical arrival time": the moment it would be full again. Taking a token
+ * pushes that moment one refill interval into the future, and a request is
+ * refused when it would move it more than a full burst ahead of now. That makes
+ * every acquire a single CAS on one long.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param burst          tokens available when the bucket is full
+     * @param refillInterval time to regain one token
+     */
+    public TokenBucket(int burst, long refillInterval, TimeUnit unit) {
+        if (burst <= 0 || refillInterval <= 0) {
+            throw new IllegalArgumentException("Burst and refill interval must be positive");
+        }
+        this.intervalNanos = unit.toNanos(refillInterval);
+        this.burstNanos = intervalNanos * burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            if (next - nowNanos > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds until the next token is available (0 if one is available now)
+     */
+    public long nanosUntilAvailable(long nowNanos) {
+        long wait = fullAt.get() + intervalNanos - burstNanos - nowNanos;
+        return Math.max(0, wait);
+    }
+
+    /**
+     * True when the bucket has refilled completely, so it can be discarded
+     */
+    public boolean isFull(long nowNanos) {
+        return fullAt.get() - nowNanos <= 0;
+    }
+}
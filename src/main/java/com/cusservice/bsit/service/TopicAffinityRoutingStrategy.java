@@ -0,0 +1,27 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Prefers agents who recently handled the same topic, falling back to least-loaded
+ */
+@Component
+public class TopicAffinityRoutingStrategy implements RoutingStrategy {
+
+    @Override
+    public String name() {
+        return "topic-affinity";
+    }
+
+    @Override
+    public Optional<AgentState> select(QueueStudentDTO session, List<AgentState> candidates) {
+        Optional<AgentState> match = candidates.stream()
+                .filter(agent -> agent.hasRecentTopic(session.getTopic()))
+                .min(LeastLoadedRoutingStrategy.LEAST_LOADED);
+        return match.isPresent() ? match : candidates.stream().min(LeastLoadedRoutingStrategy.LEAST_LOADED);
+    }
+}
@@ -16,11 +16,14 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
+    private final AgentStateRegistry agentStateRegistry;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, EmailService emailService) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, EmailService emailService,
+                       AgentStateRegistry agentStateRegistry) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
+        this.agentStateRegistry = agentStateRegistry;
     }
 
     @Transactional
@@ -44,6 +47,9 @@ public class UserService {
         user.setTokenExpiryDate(LocalDateTime.now().plusHours(24));
 
         User savedUser = userRepository.save(user);
+        if (role == User.Role.SUPPORT_AGENT) {
+            agentStateRegistry.track(savedUser);
+        }
 
         // Send verification email
         try {
@@ -93,17 +99,4 @@ public class UserService {
             }
         }
     }
-    
-    /**
-     * Update agent availability status
-     */
-    @Transactional
-    public void updateAgentAvailability(Long agentId, boolean available) {
-        Optional<User> userOpt = userRepository.findById(agentId);
-        if (userOpt.isPresent()) {
-            User user = userOpt.get();
-            user.setAvailable(available);
-            userRepository.save(user);
-        }
-    }
 }
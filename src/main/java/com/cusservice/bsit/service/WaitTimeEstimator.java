@@ -0,0 +1,124 @@
+package com.cusservice.bsit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming wait-time estimator for queued students.
+ *
+ * Keeps exponentially weighted moving averages of handle time (assign to
+ * close), assignment latency (enqueue to assign) and the interval between
+ * dequeues while students are waiting. Every event is an O(1) update and an
+ * estimate never touches the database.
+ *
+ * The observed dequeue interval is used when there is one. Otherwise each
+ * position is expected to take one handle time spread over the session slots
+ * of the agents online, and without either the assignment latency is used.
+ */
+@Service
+public class WaitTimeEstimator {
+
+    private final AgentStateRegistry agentStateRegistry;
+    private final Ewma handleTime;
+    private final Ewma assignmentLatency;
+    private final Ewma dequeueInterval;
+
+    // Session ID -> assignment time, for measuring handle time on close
+    private final Map<Long, Long> assignedAt = new ConcurrentHashMap<>();
+
+    // Last dequeue time, or -1 if the queue was empty after that dequeue
+    private final AtomicLong lastBusyDequeueAt = new AtomicLong(-1);
+
+    public WaitTimeEstimator(AgentStateRegistry agentStateRegistry,
+                             @Value("${chat.eta.smoothing:0.2}") double alpha) {
+        this.agentStateRegistry = agentStateRegistry;
+        this.handleTime = new Ewma(alpha);
+        this.assignmentLatency = new Ewma(alpha);
+        this.dequeueInterval = new Ewma(alpha);
+    }
+
+    /**
+     * A waiting session was handed to an agent
+     */
+    public void recordAssignment(Long sessionId, LocalDateTime enqueuedAt, int queueSizeAfter) {
+        long now = System.currentTimeMillis();
+        assignedAt.put(sessionId, now);
+        if (enqueuedAt != null) {
+            assignmentLatency.add(Duration.between(enqueuedAt, LocalDateTime.now()).toMillis());
+        }
+        // Only intervals while students were kept waiting say anything about throughput
+        long previous = lastBusyDequeueAt.getAndSet(queueSizeAfter > 0 ? now : -1);
+        if (previous > 0) {
+            dequeueInterval.add(now - previous);
+        }
+    }
+
+    /**
+     * An assigned session was closed
+     */
+    public void recordClose(Long sessionId) {
+        Long start = assignedAt.remove(sessionId);
+        if (start != null) {
+            handleTime.add(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Estimated wait in seconds for a queue position, or null with no data yet
+     */
+    public Long estimateWaitSeconds(int position) {
+        if (position <= 0) {
+            return null;
+        }
+        double perPosition = dequeueInterval.get();
+        if (Double.isNaN(perPosition)) {
+            // No busy-period samples yet; every staffed slot frees up once per handle time
+            int slots = agentStateRegistry.staffedSlots();
+            double handle = handleTime.get();
+            if (slots > 0 && !Double.isNaN(handle)) {
+                perPosition = handle / slots;
+            }
+        }
+        if (Double.isNaN(perPosition)) {
+            // Nobody online or no chat closed yet; fall back to how long students have been waiting
+            perPosition = assignmentLatency.get();
+        }
+        if (Double.isNaN(perPosition)) {
+            return null;
+        }
+        return Math.round(position * perPosition / 1000.0);
+    }
+
+    /**
+     * Lock-free exponentially weighted moving average
+     */
+    private static final class Ewma {
+        private final double alpha;
+        private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+
+        Ewma(double alpha) {
+            this.alpha = alpha;
+        }
+
+        void add(double sample) {
+            long current;
+            long next;
+            do {
+                current = bits.get();
+                double value = Double.longBitsToDouble(current);
+                double updated = Double.isNaN(value) ? sample : value + alpha * (sample - value);
+                next = Double.doubleToLongBits(updated);
+            } while (!bits.compareAndSet(current, next));
+        }
+
+        double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+    }
+}
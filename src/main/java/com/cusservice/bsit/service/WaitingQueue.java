@@ -0,0 +1,302 @@
+package com.cusservice.bsit.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * FIFO queue of waiting entries with ticket-number semantics.
+ *
+ * Every entry receives a monotonically increasing ticket when it is enqueued.
+ * Entries are indexed by ID and their slots are tracked in a Fenwick tree, so
+ * position lookup and removal are O(log n) and size is O(1), instead of the
+ * linear scans a plain linked queue needs.
+ *
+ * Every mutation bumps a version number. Snapshots are immutable and cached per
+ * version, so repeated reads of an unchanged queue share one copy without
+ * taking the lock.
+ */
+public class WaitingQueue<E> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Function<E, Long> idExtractor;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Session ID -> slot holding that entry
+    private final Map<Long, Integer> index = new HashMap<>();
+
+    private Object[] entries = new Object[INITIAL_CAPACITY];
+    private long[] tickets = new long[INITIAL_CAPACITY];
+    // 1-based Fenwick tree counting occupied slots
+    private int[] tree = new int[INITIAL_CAPACITY + 1];
+
+    // First slot that may still be occupied, and next free slot
+    private int head;
+    private int tail;
+    private long nextTicket = 1;
+
+    private volatile int size;
+    // Bumped under the write lock on every change
+    private volatile long version;
+    private volatile Snapshot<E> cachedSnapshot = new Snapshot<>(0, Collections.emptyList());
+
+    /**
+     * Immutable copy of the queue as of one version
+     */
+    public record Snapshot<E>(long version, List<E> entries) {
+    }
+
+    public WaitingQueue(Function<E, Long> idExtractor) {
+        this.idExtractor = idExtractor;
+    }
+
+    /**
+     * Add an entry to the back of the queue and return its ticket number.
+     * Re-adding an entry that is already queued keeps its original ticket.
+     */
+    public long add(E entry) {
+        Long id = idExtractor.apply(entry);
+        lock.writeLock().lock();
+        try {
+            Integer existing = index.get(id);
+            if (existing != null) {
+                entries[existing] = entry;
+                version++;
+                return tickets[existing];
+            }
+            if (tail == entries.length) {
+                compact();
+            }
+            int slot = tail++;
+            long ticket = nextTicket++;
+            entries[slot] = entry;
+            tickets[slot] = ticket;
+            index.put(id, slot);
+            update(slot, 1);
+            size++;
+            version++;
+            return ticket;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an entry by ID. Returns the removed entry if it was queued.
+     */
+    public Optional<E> remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = index.remove(id);
+            if (slot == null) {
+                return Optional.empty();
+            }
+            return Optional.of(clearSlot(slot));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove and return the entry at the head of the queue.
+     */
+    public Optional<E> poll() {
+        lock.writeLock().lock();
+        try {
+            if (size == 0) {
+                return Optional.empty();
+            }
+            int slot = head;
+            E entry = entry(slot);
+            index.remove(idExtractor.apply(entry));
+            return Optional.of(clearSlot(slot));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the entry at the head of the queue without removing it.
+     */
+    public Optional<E> peek() {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? Optional.empty() : Optional.of(entry(head));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the 1-based position of an entry, or -1 if it is not queued.
+     */
+    public int position(Long id) {
+        lock.readLock().lock();
+        try {
+            Integer slot = index.get(id);
+            return slot == null ? -1 : prefixSum(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the ticket number of an entry, or -1 if it is not queued.
+     */
+    public long ticket(Long id) {
+        lock.readLock().lock();
+        try {
+            Integer slot = index.get(id);
+            return slot == null ? -1 : tickets[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Highest ticket handed out so far (0 if none)
+     */
+    public long lastTicket() {
+        lock.readLock().lock();
+        try {
+            return nextTicket - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(Long id) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Current version; changes whenever the queue contents change
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Immutable copy of the queued entries in ticket order
+     */
+    public List<E> snapshot() {
+        return versionedSnapshot().entries();
+    }
+
+    /**
+     * Immutable copy of the queued entries together with the version it reflects.
+     * Only the first read after a change copies the queue.
+     */
+    public Snapshot<E> versionedSnapshot() {
+        Snapshot<E> cached = cachedSnapshot;
+        if (cached.version() == version) {
+            return cached;
+        }
+        lock.readLock().lock();
+        try {
+            // Concurrent readers may both rebuild; they produce the same snapshot
+            List<E> result = new ArrayList<>(size);
+            for (int slot = head; slot < tail; slot++) {
+                if (entries[slot] != null) {
+                    result.add(entry(slot));
+                }
+            }
+            Snapshot<E> snapshot = new Snapshot<>(version, Collections.unmodifiableList(result));
+            cachedSnapshot = snapshot;
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private E clearSlot(int slot) {
+        E entry = entry(slot);
+        entries[slot] = null;
+        update(slot, -1);
+        size--;
+        version++;
+        while (head < tail && entries[head] == null) {
+            head++;
+        }
+        if (size == 0) {
+            // Every slot and tree node is back to zero, so start over at slot 0
+            head = 0;
+            tail = 0;
+        }
+        return entry;
+    }
+
+    /**
+     * Move live entries to the front of the arrays, growing them when more than
+     * half of the slots are still in use. Tickets are preserved.
+     */
+    private void compact() {
+        int capacity = size * 2 > entries.length ? entries.length * 2 : entries.length;
+        Object[] oldEntries = entries;
+        long[] oldTickets = tickets;
+        int oldHead = head;
+        int oldTail = tail;
+
+        entries = new Object[capacity];
+        tickets = new long[capacity];
+        tree = new int[capacity + 1];
+        head = 0;
+        tail = 0;
+        for (int slot = oldHead; slot < oldTail; slot++) {
+            if (oldEntries[slot] != null) {
+                entries[tail] = oldEntries[slot];
+                tickets[tail] = oldTickets[slot];
+                index.put(idExtractor.apply(entry(tail)), tail);
+                tail++;
+            }
+        }
+        // Linear-time Fenwick build over the compacted slots
+        for (int i = 1; i <= capacity; i++) {
+            if (i <= tail) {
+                tree[i] += 1;
+            }
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private int prefixSum(int slot) {
+        int sum = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E entry(int slot) {
+        return (E) entries[slot];
+    }
+}
@@ -0,0 +1,155 @@
+package com.cusservice.bsit.config;
+
+import com.cusservice.bsit.WelcomeApplication;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.UserRepository;
+import com.cusservice.bsit.service.ChatNotificationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.CookieManager;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two application nodes in one JVM sharing an embedded broker: a user
+ * connected to node A gets a notification sent from node B.
+ */
+class BrokerRelayClusterTests {
+
+	private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+	@Test
+	void userDestinationsReachAUserOnAnotherNode() throws Exception {
+		int brokerPort = freePort();
+		try (ConfigurableApplicationContext nodeA = startNode("nodeA", brokerPort, true);
+			 ConfigurableApplicationContext nodeB = startNode("nodeB", brokerPort, false)) {
+
+			createStudent(nodeA, "relay-student", "secret");
+			HttpClient http = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+			login(http, port(nodeA), "relay-student", "secret");
+
+			WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+			stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+			WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+			headers.add("Cookie", sessionCookie(http));
+			StompSession session = stompClient.connectAsync("ws://localhost:" + port(nodeA) + "/ws/websocket",
+					headers, new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+
+			BlockingQueue<Map<?, ?>> received = new LinkedBlockingQueue<>();
+			session.subscribe("/user/queue/notifications", new StompFrameHandler() {
+				@Override
+				public Type getPayloadType(StompHeaders headers) {
+					return Map.class;
+				}
+
+				@Override
+				public void handleFrame(StompHeaders headers, Object payload) {
+					received.add((Map<?, ?>) payload);
+				}
+			});
+
+			// The subscription reaches the broker asynchronously, so keep sending until one lands
+			ChatNotificationService notifications = nodeB.getBean(ChatNotificationService.class);
+			Map<?, ?> frame = null;
+			for (int attempt = 0; attempt < 40 && frame == null; attempt++) {
+				notifications.sendError("relay-student", "hello from node B");
+				frame = received.poll(500, TimeUnit.MILLISECONDS);
+			}
+			assertNotNull(frame, "notification sent from node B never reached node A");
+			assertEquals("hello from node B", frame.get("message"));
+			session.disconnect();
+		}
+	}
+
+	private static ConfigurableApplicationContext startNode(String name, int brokerPort, boolean embeddedBroker) {
+		return new SpringApplicationBuilder(WelcomeApplication.class).run(
+				"--server.port=0",
+				"--server.ssl.enabled=false",
+				"--spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=MySQL",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--spring.jpa.show-sql=false",
+				"--chat.broker.mode=relay",
+				"--chat.broker.relay.port=" + brokerPort,
+				"--chat.broker.embedded.enabled=" + embeddedBroker);
+	}
+
+	private static void createStudent(ConfigurableApplicationContext node, String username, String password) {
+		User user = new User();
+		user.setUsername(username);
+		user.setPassword(node.getBean(PasswordEncoder.class).encode(password));
+		user.setEmail(username + "@example.com");
+		user.setFullName("Relay Student");
+		user.setRole(User.Role.STUDENT);
+		user.setEmailVerified(true);
+		node.getBean(UserRepository.class).save(user);
+	}
+
+	private static void login(HttpClient http, int port, String username, String password) throws Exception {
+		String page = http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login")).build(),
+				HttpResponse.BodyHandlers.ofString()).body();
+		Matcher csrf = CSRF.matcher(page);
+		assertTrue(csrf.find(), "login page has no CSRF token");
+
+		String form = "username=" + encode(username) + "&password=" + encode(password) + "&_csrf=" + encode(csrf.group(1));
+		HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(302, response.statusCode());
+		assertTrue(response.headers().firstValue("Location").orElse("").endsWith("/dashboard"), "login failed");
+	}
+
+	private static String sessionCookie(HttpClient http) {
+		CookieManager cookies = (CookieManager) http.cookieHandler().orElseThrow();
+		return cookies.getCookieStore().getCookies().stream()
+				.filter(cookie -> cookie.getName().equals("JSESSIONID"))
+				.map(cookie -> "JSESSIONID=" + cookie.getValue())
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static int port(ConfigurableApplicationContext node) {
+		return ((WebServerApplicationContext) node).getWebServer().getPort();
+	}
+
+	private static int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
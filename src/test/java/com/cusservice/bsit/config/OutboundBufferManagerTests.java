@@ -0,0 +1,156 @@
+package com.cusservice.bsit.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundBufferManagerTests {
+
+	private static final int LIMIT = 8 * 1024;
+	private static final String PADDING = "x".repeat(1024);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final OutboundBufferManager manager = new OutboundBufferManager(meterRegistry, LIMIT, 10_000,
+			List.of("/topic/queue-updates"), List.of("/topic/announcements"));
+	private final CountDownLatch clientsStalled = new CountDownLatch(1);
+
+	@AfterEach
+	void shutdown() {
+		clientsStalled.countDown();
+		manager.shutdown();
+	}
+
+	@Test
+	void bufferedBytesStayBoundedWithManyStalledClients() throws Exception {
+		int clients = 1000;
+		List<BufferedWebSocketSession> sessions = new ArrayList<>();
+		for (int i = 0; i < clients; i++) {
+			sessions.add(new BufferedWebSocketSession(stalledClient("s" + i, new CopyOnWriteArrayList<>()), manager));
+		}
+
+		for (int round = 0; round < 200; round++) {
+			for (BufferedWebSocketSession session : sessions) {
+				session.sendMessage(frame("/topic/queue-updates", round));
+				session.sendMessage(frame("/topic/announcements", round));
+			}
+		}
+
+		// 400 KB was offered to every client; what is held stays within the per-connection limit
+		int frameSize = frame("/topic/announcements", 0).getPayloadLength();
+		for (BufferedWebSocketSession session : sessions) {
+			assertTrue(session.getPendingBytes() <= LIMIT, "pending " + session.getPendingBytes());
+		}
+		assertTrue(manager.getBufferedBytes() <= (long) clients * (LIMIT + frameSize),
+				"buffered " + manager.getBufferedBytes());
+		assertEquals(0, meterRegistry.counter("chat.outbound.slow-consumers.closed").count());
+
+		clientsStalled.countDown();
+		for (BufferedWebSocketSession session : sessions) {
+			awaitDrained(session);
+		}
+		assertEquals(0, manager.getBufferedBytes());
+	}
+
+	@Test
+	void queuedUpdatesAreCoalescedToTheNewest() throws Exception {
+		List<String> delivered = new CopyOnWriteArrayList<>();
+		BufferedWebSocketSession session = new BufferedWebSocketSession(stalledClient("s1", delivered), manager);
+
+		session.sendMessage(frame("/user/queue/messages", 0));
+		awaitWriterBlocked(delivered);
+		for (int version = 1; version <= 10; version++) {
+			session.sendMessage(frame("/topic/queue-updates", version));
+		}
+		assertEquals(frame("/topic/queue-updates", 10).getPayloadLength(), session.getPendingBytes());
+
+		clientsStalled.countDown();
+		awaitDrained(session);
+		assertEquals(List.of("/user/queue/messages 0", "/topic/queue-updates 10"), delivered);
+		assertEquals(9, meterRegistry.counter("chat.outbound.dropped", "policy", "coalesce").count());
+	}
+
+	@Test
+	void reliableOverflowClosesTheConnectionInsteadOfDropping() throws Exception {
+		List<String> delivered = new CopyOnWriteArrayList<>();
+		WebSocketSession client = stalledClient("s1", delivered);
+		BufferedWebSocketSession session = new BufferedWebSocketSession(client, manager);
+
+		session.sendMessage(frame("/user/queue/messages", 0));
+		awaitWriterBlocked(delivered);
+		int seq = 1;
+		while (session.getPendingBytes() + frame("/user/queue/messages", seq).getPayloadLength() <= LIMIT) {
+			session.sendMessage(frame("/user/queue/messages", seq++));
+		}
+		verify(client, never()).close(any());
+
+		session.sendMessage(frame("/user/queue/messages", seq));
+		verify(client).close(CloseStatus.SESSION_NOT_RELIABLE);
+		assertEquals(0, session.getPendingBytes());
+		assertEquals(0, manager.getBufferedBytes());
+		assertEquals(1, meterRegistry.counter("chat.outbound.slow-consumers.closed").count());
+		assertEquals(0, meterRegistry.counter("chat.outbound.dropped", "policy", "droppable").count());
+	}
+
+	@Test
+	void destinationIsReadFromMessageFramesOnly() {
+		assertEquals("/topic/queue-updates", OutboundBufferManager.destinationOf(frame("/topic/queue-updates", 1)));
+		assertEquals(null, OutboundBufferManager.destinationOf(new TextMessage("CONNECTED\nversion:1.2\n\n\0")));
+		assertEquals(OutboundBufferManager.Policy.RELIABLE, manager.policyFor("/user/queue/messages"));
+		assertEquals(OutboundBufferManager.Policy.RELIABLE, manager.policyFor(null));
+	}
+
+	// A client whose socket accepts nothing until the test lets it go
+	private WebSocketSession stalledClient(String id, List<String> delivered) throws Exception {
+		WebSocketSession client = mock(WebSocketSession.class);
+		when(client.getId()).thenReturn(id);
+		doAnswer(invocation -> {
+			WebSocketMessage<?> message = invocation.getArgument(0);
+			String payload = (String) message.getPayload();
+			String destination = OutboundBufferManager.destinationOf(message);
+			delivered.add(destination + " " + payload.substring(payload.indexOf("\n\n") + 2, payload.indexOf('|')));
+			clientsStalled.await();
+			return null;
+		}).when(client).sendMessage(any());
+		return client;
+	}
+
+	private static TextMessage frame(String destination, int version) {
+		return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\nmessage-id:" + version
+				+ "\ncontent-type:application/json\n\n" + version + "|" + PADDING + "\0");
+	}
+
+	private static void awaitWriterBlocked(List<String> delivered) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (delivered.isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(1, delivered.size());
+	}
+
+	private static void awaitDrained(BufferedWebSocketSession session) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (session.getPendingBytes() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, session.getPendingBytes());
+	}
+}
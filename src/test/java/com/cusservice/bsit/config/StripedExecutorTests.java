@@ -0,0 +1,92 @@
+package com.cusservice.bsit.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedExecutorTests {
+
+	private static final int CHATS = 20;
+	private static final int FRAMES_PER_CHAT = 500;
+
+	@Test
+	void framesOfOneChatRunInOrder() throws Exception {
+		StripedExecutor executor = new StripedExecutor("test", 4, 100_000, new SimpleMeterRegistry());
+		Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+		CountDownLatch done = new CountDownLatch(CHATS * FRAMES_PER_CHAT);
+
+		for (int frame = 0; frame < FRAMES_PER_CHAT; frame++) {
+			for (int chat = 0; chat < CHATS; chat++) {
+				String chatId = String.valueOf(chat);
+				int sequence = frame;
+				executor.execute(task(frame(chatId), () -> {
+					seen.computeIfAbsent(chatId, id -> new ArrayList<>()).add(sequence);
+					done.countDown();
+				}));
+			}
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int chat = 0; chat < CHATS; chat++) {
+			List<Integer> frames = seen.get(String.valueOf(chat));
+			assertEquals(FRAMES_PER_CHAT, frames.size());
+			for (int i = 0; i < FRAMES_PER_CHAT; i++) {
+				assertEquals(i, frames.get(i));
+			}
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	void fallsBackToWebSocketSession() {
+		StripedExecutor executor = new StripedExecutor("test", 8, 10, new SimpleMeterRegistry());
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+		accessor.setSessionId("ws-1");
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+		assertEquals(executor.stripeFor(task(message, () -> { })), executor.stripeFor(task(message, () -> { })));
+		executor.shutdown();
+	}
+
+	private static Message<byte[]> frame(String chatId) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+		accessor.setNativeHeader(StripedExecutor.CHAT_SESSION_HEADER, chatId);
+		accessor.setSessionId("ws-" + chatId);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	private static MessageHandlingRunnable task(Message<?> message, Runnable work) {
+		return new MessageHandlingRunnable() {
+			@Override
+			public Message<?> getMessage() {
+				return message;
+			}
+
+			@Override
+			public MessageHandler getMessageHandler() {
+				return m -> work.run();
+			}
+
+			@Override
+			public void run() {
+				work.run();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,326 @@
+package com.cusservice.bsit.config;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.RestTemplateXhrTransport;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.net.CookieManager;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the plain WebSocket endpoint with SockJS for server-to-client chat
+ * frames: bytes on the wire (counted by a TCP proxy in front of the server)
+ * and server CPU per message (CPU time of Tomcat, broker and channel threads).
+ * Tagged "benchmark", so the default build skips it. Run it with
+ * -DexcludedGroups= -Dtest=WebSocketTransportBenchmarkTests, adding
+ * -Dbenchmark.messages=20000 for steadier numbers.
+ */
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.ssl.enabled=false",
+		"spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"spring.jpa.show-sql=false"
+})
+class WebSocketTransportBenchmarkTests {
+
+	private static final Logger log = LoggerFactory.getLogger(WebSocketTransportBenchmarkTests.class);
+
+	private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+	private static final int MESSAGES = Integer.getInteger("benchmark.messages", 2000);
+	private static final int WARMUP = 500;
+	// Messages in flight; keeps a fast reader under the outbound buffer limit
+	private static final int WINDOW = 32;
+	private static final List<String> SERVER_THREADS = List.of("http-nio-", "clientInboundChannel", "clientOutboundChannel",
+			"brokerChannel", "MessageBroker", "chat-", "ForkJoinPool", "main");
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private SimpMessagingTemplate messagingTemplate;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	private String cookie;
+
+	@BeforeEach
+	void loginStudent() throws Exception {
+		if (userRepository.findByUsername("bench-student").isEmpty()) {
+			User user = new User();
+			user.setUsername("bench-student");
+			user.setPassword(passwordEncoder.encode("secret"));
+			user.setEmail("bench-student@example.com");
+			user.setFullName("Benchmark Student");
+			user.setRole(User.Role.STUDENT);
+			user.setEmailVerified(true);
+			userRepository.save(user);
+		}
+		cookie = login("bench-student", "secret");
+	}
+
+	@Test
+	void nativeEndpointNegotiatesPermessageDeflate() throws Exception {
+		WebSocketSession session = new StandardWebSocketClient().execute(new AbstractWebSocketHandler() { },
+				deflateHeaders(), URI.create("ws://localhost:" + port + "/ws-native")).get(10, TimeUnit.SECONDS);
+		try {
+			assertEquals(List.of("permessage-deflate"),
+					session.getExtensions().stream().map(WebSocketExtension::getName).toList());
+		} finally {
+			session.close();
+		}
+	}
+
+	@Test
+	void compareTransports() throws Exception {
+		try (CountingProxy proxy = new CountingProxy(port)) {
+			StandardWebSocketClient webSocket = new StandardWebSocketClient();
+			// Discarded, so the first measured transport does not pay for JIT compilation
+			run("warm-up", proxy, webSocket, "ws://localhost:%d/ws-native", deflateHeaders());
+			Result deflate = run("native + deflate", proxy, webSocket, "ws://localhost:%d/ws-native", deflateHeaders());
+			Result plain = run("native", proxy, webSocket, "ws://localhost:%d/ws-native", new WebSocketHttpHeaders());
+			Result sockJsWebSocket = run("sockjs websocket + deflate", proxy,
+					new SockJsClient(List.of(new WebSocketTransport(webSocket))), "http://localhost:%d/ws", deflateHeaders());
+			Result sockJsStreaming = run("sockjs xhr-streaming", proxy,
+					new SockJsClient(List.of(new RestTemplateXhrTransport())), "http://localhost:%d/ws", new WebSocketHttpHeaders());
+
+			log.info("WebSocket transport benchmark, {} chat frames each", MESSAGES);
+			for (Result result : List.of(deflate, plain, sockJsWebSocket, sockJsStreaming)) {
+				log.info(String.format("%-28s to client %8.1f B/msg, to server %8.1f B/msg, server CPU %8.1f us/msg",
+						result.name(), result.bytesToClient(), result.bytesToServer(), result.cpuMicros()));
+			}
+
+			assertTrue(deflate.bytesToClient() < plain.bytesToClient(), "deflate did not shrink frames");
+			assertTrue(deflate.bytesToClient() < sockJsStreaming.bytesToClient(), "native is larger than SockJS");
+		}
+	}
+
+	private record Result(String name, double bytesToClient, double bytesToServer, double cpuMicros) {
+	}
+
+	private Result run(String name, CountingProxy proxy, WebSocketClient client, String url,
+					   WebSocketHttpHeaders headers) throws Exception {
+		WebSocketStompClient stompClient = new WebSocketStompClient(client);
+		stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+		headers.add("Cookie", cookie);
+		StompSession session = stompClient.connectAsync(url.formatted(proxy.port()), headers,
+				new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+
+		Semaphore window = new Semaphore(0);
+		session.subscribe("/user/queue/messages", new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return Map.class;
+			}
+
+			@Override
+			public void handleFrame(StompHeaders headers, Object payload) {
+				window.release();
+			}
+		});
+		// The subscription registers asynchronously, so probe until a frame lands
+		for (int attempt = 0; attempt < 50 && !window.tryAcquire(200, TimeUnit.MILLISECONDS); attempt++) {
+			messagingTemplate.convertAndSendToUser("bench-student", "/queue/messages", frame(-1));
+		}
+		Thread.sleep(200);
+		window.drainPermits();
+		send(window, 0, WARMUP);
+
+		proxy.reset();
+		Map<Long, Long> cpuBefore = serverCpuTimes();
+		send(window, WARMUP, MESSAGES);
+		long cpuNanos = cpuSince(cpuBefore);
+		double bytesToClient = (double) proxy.toClient.get() / MESSAGES;
+		double bytesToServer = (double) proxy.toServer.get() / MESSAGES;
+
+		session.disconnect();
+		stompClient.stop();
+		return new Result(name, bytesToClient, bytesToServer, cpuNanos / 1000.0 / MESSAGES);
+	}
+
+	private void send(Semaphore window, int first, int count) throws InterruptedException {
+		window.release(WINDOW);
+		for (int i = first; i < first + count; i++) {
+			if (!window.tryAcquire(10, TimeUnit.SECONDS)) {
+				throw new AssertionError("frame " + i + " was not delivered");
+			}
+			messagingTemplate.convertAndSendToUser("bench-student", "/queue/messages", frame(i));
+		}
+		assertTrue(window.tryAcquire(WINDOW, 10, TimeUnit.SECONDS), "last frames were not delivered");
+	}
+
+	private static ChatMessageFrame frame(int i) {
+		return new ChatMessageFrame(42L, (long) i, 1000L + i, "c-" + i,
+				"Reply " + i + ": the enrolment page keeps saying my session expired after I pick a section",
+				"bench-student", "Benchmark Student", LocalDateTime.now().toString(), "CHAT");
+	}
+
+	private static WebSocketHttpHeaders deflateHeaders() {
+		WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+		headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+		return headers;
+	}
+
+	private static Map<Long, Long> serverCpuTimes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Map<Long, Long> times = new HashMap<>();
+		for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+			if (info != null && SERVER_THREADS.stream().anyMatch(info.getThreadName()::startsWith)) {
+				times.put(info.getThreadId(), threads.getThreadCpuTime(info.getThreadId()));
+			}
+		}
+		return times;
+	}
+
+	private static long cpuSince(Map<Long, Long> before) {
+		long total = 0;
+		for (Map.Entry<Long, Long> after : serverCpuTimes().entrySet()) {
+			total += Math.max(0, after.getValue() - before.getOrDefault(after.getKey(), 0L));
+		}
+		return total;
+	}
+
+	private String login(String username, String password) throws Exception {
+		CookieManager cookies = new CookieManager();
+		HttpClient http = HttpClient.newBuilder().cookieHandler(cookies).build();
+		String page = http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login")).build(),
+				HttpResponse.BodyHandlers.ofString()).body();
+		Matcher csrf = CSRF.matcher(page);
+		assertTrue(csrf.find(), "login page has no CSRF token");
+
+		String form = "username=" + encode(username) + "&password=" + encode(password) + "&_csrf=" + encode(csrf.group(1));
+		HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login"))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(302, response.statusCode());
+		return cookies.getCookieStore().getCookies().stream()
+				.filter(c -> c.getName().equals("JSESSIONID"))
+				.map(c -> "JSESSIONID=" + c.getValue())
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+
+	// Forwards connections to the server and counts the bytes in each direction
+	private static class CountingProxy implements AutoCloseable {
+
+		private final ServerSocket serverSocket;
+		private final int target;
+		private final AtomicLong toClient = new AtomicLong();
+		private final AtomicLong toServer = new AtomicLong();
+
+		CountingProxy(int target) throws Exception {
+			this.target = target;
+			this.serverSocket = new ServerSocket(0);
+			Thread.ofPlatform().name("bench-proxy-accept").daemon().start(this::accept);
+		}
+
+		int port() {
+			return serverSocket.getLocalPort();
+		}
+
+		void reset() {
+			toClient.set(0);
+			toServer.set(0);
+		}
+
+		private void accept() {
+			try {
+				while (true) {
+					Socket client = serverSocket.accept();
+					Socket server = new Socket("localhost", target);
+					Thread.ofPlatform().name("bench-proxy-up").daemon().start(() -> pump(client, server, toServer));
+					Thread.ofPlatform().name("bench-proxy-down").daemon().start(() -> pump(server, client, toClient));
+				}
+			} catch (Exception e) {
+				// Closed
+			}
+		}
+
+		private static void pump(Socket from, Socket to, AtomicLong counter) {
+			byte[] buffer = new byte[16 * 1024];
+			try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					counter.addAndGet(read);
+					out.write(buffer, 0, read);
+					out.flush();
+				}
+			} catch (Exception e) {
+				// Either side went away
+			} finally {
+				try {
+					from.close();
+					to.close();
+				} catch (Exception ignored) {
+				}
+			}
+		}
+
+		@Override
+		public void close() throws Exception {
+			serverSocket.close();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.QueueSnapshot;
+import com.cusservice.bsit.dto.QueueStudentDTO;
+import com.cusservice.bsit.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AgentDispatcherTests {
+
+	private static final Long BROKEN = 1L;
+	private static final Long NEXT = 2L;
+
+	private final ChatService chatService = mock(ChatService.class);
+	private final UserService userService = mock(UserService.class);
+	private final AgentStateRegistry registry = mock(AgentStateRegistry.class);
+	private final AgentState agentState = new AgentState(10L, "agent", "Agent", 3);
+	private final User agent = new User();
+
+	private final AgentDispatcher dispatcher = new AgentDispatcher(chatService, userService, registry,
+			List.of(new FirstAgent()));
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(dispatcher, "enabled", true);
+		ReflectionTestUtils.setField(dispatcher, "strategyName", "first");
+		dispatcher.selectStrategy();
+
+		agent.setId(10L);
+		agent.setUsername("agent");
+		when(userService.findById(10L)).thenReturn(Optional.of(agent));
+		when(registry.routableAgents()).thenReturn(List.of(agentState));
+		when(chatService.getQueueSnapshot()).thenReturn(new QueueSnapshot(1, List.of(entry(BROKEN), entry(NEXT))));
+		// The head's session was deleted but its entry is still queued
+		when(chatService.assignAgentToSession(eq(BROKEN), any())).thenThrow(new RuntimeException("Chat session not found"));
+	}
+
+	@Test
+	void aFailingHeadDoesNotBlockTheStudentsBehindIt() {
+		dispatcher.dispatch();
+
+		verify(chatService).assignAgentToSession(BROKEN, agent);
+		verify(chatService).assignAgentToSession(NEXT, agent);
+	}
+
+	@Test
+	void aHeadThatKeepsFailingIsCheckedAndDropped() {
+		when(chatService.removeStaleQueueEntry(BROKEN)).thenReturn(true);
+
+		dispatcher.dispatch();
+		dispatcher.dispatch();
+		verify(chatService, never()).removeStaleQueueEntry(any());
+
+		dispatcher.dispatch();
+		verify(chatService, times(3)).assignAgentToSession(BROKEN, agent);
+		verify(chatService).removeStaleQueueEntry(BROKEN);
+	}
+
+	private static QueueStudentDTO entry(Long sessionId) {
+		QueueStudentDTO entry = new QueueStudentDTO();
+		entry.setSessionId(sessionId);
+		return entry;
+	}
+
+	private static class FirstAgent implements RoutingStrategy {
+
+		@Override
+		public String name() {
+			return "first";
+		}
+
+		@Override
+		public Optional<AgentState> select(QueueStudentDTO session, List<AgentState> candidates) {
+			return candidates.stream().findFirst();
+		}
+	}
+}
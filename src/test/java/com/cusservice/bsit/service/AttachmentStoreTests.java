@@ -0,0 +1,57 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.Attachment;
+import com.cusservice.bsit.repository.AttachmentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import(AttachmentStore.class)
+@TestPropertySource(properties = {
+		"chat.attachments.dir=target/test-attachments",
+		"chat.attachments.max-size=1024",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+class AttachmentStoreTests {
+
+	@Autowired
+	private AttachmentStore attachmentStore;
+
+	@Autowired
+	private AttachmentRepository attachmentRepository;
+
+	@Test
+	void identicalUploadsShareOneBlob() throws Exception {
+		byte[] png = "not really a png".getBytes(StandardCharsets.UTF_8);
+
+		Attachment first = attachmentStore.store(new MockMultipartFile("file", "a.png", "image/png", png), null);
+		Attachment second = attachmentStore.store(new MockMultipartFile("file", "b.png", "image/png", png), null);
+
+		assertEquals(first.getId(), second.getId());
+		assertEquals(1, attachmentRepository.count());
+		assertArrayEquals(png, Files.readAllBytes(attachmentStore.open(first).getFile().toPath()));
+		assertTrue(attachmentStore.isReference(attachmentStore.urlOf(first)));
+	}
+
+	@Test
+	void rejectsOversizedAndMalformedIds() {
+		MockMultipartFile large = new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[2048]);
+
+		assertThrows(IllegalArgumentException.class, () -> attachmentStore.store(large, null));
+		assertFalse(attachmentStore.isReference(AttachmentStore.URL_PREFIX + "../../etc/passwd"));
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.MessageView;
+import com.cusservice.bsit.model.ChatMessage;
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatMessageRepository;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import com.cusservice.bsit.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+		"chat.messages.persistence=group-commit",
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Import({ChatMessageWriter.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ChatMessageWriterTests {
+
+	private static final int SENDERS = 8;
+	private static final int MESSAGES_PER_SENDER = 50;
+
+	@Autowired
+	private ChatMessageWriter writer;
+
+	@Autowired
+	private ChatMessageRepository chatMessageRepository;
+
+	@Autowired
+	private ChatSessionRepository chatSessionRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void groupCommitPersistsEveryMessageWithAnId() throws Exception {
+		User student = saveStudent("writer-student");
+		ChatSession session = saveSession(student);
+
+		// Concurrent senders share batches and each waits for its commit
+		ExecutorService pool = Executors.newFixedThreadPool(SENDERS);
+		List<Future<ChatMessage>> results = new ArrayList<>();
+		for (int i = 0; i < SENDERS * MESSAGES_PER_SENDER; i++) {
+			String content = "message " + i;
+			results.add(pool.submit(() -> {
+				ChatMessage message = new ChatMessage();
+				message.setSession(session);
+				message.setSender(student);
+				message.setContent(content);
+				message.setSentAt(LocalDateTime.now());
+				return writer.write(message);
+			}));
+		}
+
+		Set<Long> ids = new HashSet<>();
+		for (Future<ChatMessage> result : results) {
+			Long id = result.get().getId();
+			assertNotNull(id);
+			ids.add(id);
+		}
+		pool.shutdown();
+
+		assertEquals(SENDERS * MESSAGES_PER_SENDER, ids.size());
+		assertEquals(SENDERS * MESSAGES_PER_SENDER, chatMessageRepository.findBySessionOrderBySentAtAsc(session).size());
+	}
+
+	@Test
+	void registryMessageCostsOneStatement() {
+		User student = saveStudent("registry-student");
+		User agent = saveStudent("registry-agent");
+		ChatSession session = saveSession(student);
+		session.setAgent(agent);
+		session.setStatus(ChatSession.SessionStatus.ACTIVE);
+		ActiveSession active = ActiveSession.of(session);
+
+		ChatMessageWriter syncWriter = new ChatMessageWriter(chatMessageRepository, jdbcTemplate,
+				new SimpleMeterRegistry(), "sync", 100, 100, 20);
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		// Session and sender are in-memory references, so only the insert reaches the database
+		ChatMessage message = new ChatMessage();
+		message.setSession(active.toReference());
+		message.setSender(active.participant("registry-student").orElseThrow().toReference());
+		message.setContent("hello");
+		message.setSentAt(LocalDateTime.now());
+		assertNotNull(syncWriter.write(message).getId());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void asyncWritesAfterShutdownAreSavedDirectly() throws Exception {
+		User student = saveStudent("shutdown-student");
+		ChatSession session = saveSession(student);
+		ChatMessageWriter asyncWriter = new ChatMessageWriter(chatMessageRepository, jdbcTemplate,
+				new SimpleMeterRegistry(), "async", 100, 100, 20);
+		asyncWriter.start();
+		asyncWriter.shutdown();
+
+		// The writer thread is gone, so a journaled message would never be saved
+		ChatMessage message = new ChatMessage();
+		message.setSession(session);
+		message.setSender(student);
+		message.setContent("late");
+		message.setSentAt(LocalDateTime.now());
+		assertNotNull(asyncWriter.write(message).getId());
+		assertEquals(1, chatMessageRepository.findBySessionOrderBySentAtAsc(session).size());
+	}
+
+	@Test
+	void historyPagesWalkBackByKeyset() {
+		User student = saveStudent("history-student");
+		ChatSession session = saveSession(student);
+		// Same timestamp for every row, so ordering falls back to the ID
+		LocalDateTime sentAt = LocalDateTime.now();
+		for (int i = 0; i < 5; i++) {
+			ChatMessage message = new ChatMessage();
+			message.setSession(session);
+			message.setSender(student);
+			message.setContent(i == 0 ? "data:image/png;base64,AAAA" : "message " + i);
+			message.setSentAt(sentAt);
+			chatMessageRepository.save(message);
+		}
+
+		List<MessageView> newest = chatMessageRepository.findLatestViews(session.getId(), Limit.of(2));
+		assertEquals(List.of("message 4", "message 3"), newest.stream().map(MessageView::content).toList());
+
+		Long cursor = newest.get(1).id();
+		LocalDateTime cursorSentAt = chatMessageRepository.findSentAt(session.getId(), cursor).orElseThrow();
+		List<MessageView> older = chatMessageRepository.findViewsBefore(session.getId(), cursorSentAt, cursor, Limit.of(10));
+		assertEquals(3, older.size());
+		assertEquals("history-student", older.get(0).sender().username());
+		// The inline image body is left out of the page
+		assertTrue(older.get(2).hasDeferredContent());
+	}
+
+	private User saveStudent(String username) {
+		User user = new User();
+		user.setUsername(username);
+		user.setPassword("secret");
+		user.setEmail(username + "@example.com");
+		user.setRole(User.Role.STUDENT);
+		user.setFullName(username);
+		return userRepository.save(user);
+	}
+
+	private ChatSession saveSession(User student) {
+		ChatSession session = new ChatSession();
+		session.setCustomer(student);
+		session.setStartedAt(LocalDateTime.now());
+		return chatSessionRepository.save(session);
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.model.ChatSession;
+import com.cusservice.bsit.model.User;
+import com.cusservice.bsit.repository.ChatSessionRepository;
+import com.cusservice.bsit.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+		"chat.queue.engine=database",
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Import(DatabaseChatQueue.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DatabaseChatQueueTests {
+
+	private static final int NODES = 6;
+	private static final int SESSIONS = 120;
+
+	@Autowired
+	private DatabaseChatQueue chatQueue;
+
+	@Autowired
+	private ChatSessionRepository chatSessionRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void concurrentNodesNeverClaimTheSameSession() throws Exception {
+		User student = saveUser("student", User.Role.STUDENT);
+		List<User> agents = new ArrayList<>();
+		for (int i = 0; i < NODES; i++) {
+			agents.add(saveUser("agent" + i, User.Role.SUPPORT_AGENT));
+		}
+		LocalDateTime start = LocalDateTime.now().minusHours(1);
+		for (int i = 0; i < SESSIONS; i++) {
+			ChatSession session = new ChatSession();
+			session.setCustomer(student);
+			session.setStartedAt(start.plusSeconds(i));
+			chatSessionRepository.save(session);
+		}
+		assertEquals(SESSIONS, chatQueue.size());
+
+		// Each thread plays one app node draining the shared table
+		Map<Long, String> claimedBy = new ConcurrentHashMap<>();
+		List<String> doubleClaims = new ArrayList<>();
+		CountDownLatch ready = new CountDownLatch(1);
+		ExecutorService nodes = Executors.newFixedThreadPool(NODES);
+		for (User agent : agents) {
+			nodes.submit(() -> {
+				ready.await();
+				// claimNext gives up after a few contended rounds, so drain until the table is empty
+				while (chatQueue.size() > 0) {
+					Optional<Long> claimed = chatQueue.claimNext(agent);
+					if (claimed.isEmpty()) {
+						continue;
+					}
+					String previous = claimedBy.putIfAbsent(claimed.get(), agent.getUsername());
+					if (previous != null) {
+						synchronized (doubleClaims) {
+							doubleClaims.add(claimed.get() + " by " + previous + " and " + agent.getUsername());
+						}
+					}
+				}
+				return null;
+			});
+		}
+		ready.countDown();
+		nodes.shutdown();
+		assertTrue(nodes.awaitTermination(60, TimeUnit.SECONDS));
+
+		assertTrue(doubleClaims.isEmpty(), doubleClaims.toString());
+		assertEquals(SESSIONS, claimedBy.size());
+		assertEquals(0, chatQueue.size());
+		for (ChatSession session : chatSessionRepository.findByCustomerOrderByStartedAtDesc(student)) {
+			assertEquals(ChatSession.SessionStatus.ACTIVE, session.getStatus());
+			assertEquals(claimedBy.get(session.getId()), session.getAgent().getUsername());
+		}
+	}
+
+	@Test
+	void claimFailsOnceSessionIsTaken() {
+		User student = saveUser("student2", User.Role.STUDENT);
+		User first = saveUser("first", User.Role.SUPPORT_AGENT);
+		User second = saveUser("second", User.Role.SUPPORT_AGENT);
+		ChatSession session = new ChatSession();
+		session.setCustomer(student);
+		Long sessionId = chatSessionRepository.save(session).getId();
+
+		assertEquals(1, chatQueue.position(sessionId));
+		assertTrue(chatQueue.remove(sessionId));
+		assertTrue(chatQueue.claim(sessionId, first));
+		assertFalse(chatQueue.claim(sessionId, second));
+		assertEquals(-1, chatQueue.position(sessionId));
+		assertFalse(chatQueue.remove(sessionId));
+	}
+
+	private User saveUser(String username, User.Role role) {
+		User user = new User();
+		user.setUsername(username);
+		user.setPassword("secret");
+		user.setEmail(username + "@example.com");
+		user.setRole(role);
+		user.setFullName(username);
+		return userRepository.save(user);
+	}
+
+}
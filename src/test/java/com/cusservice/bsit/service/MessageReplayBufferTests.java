@@ -0,0 +1,56 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import com.cusservice.bsit.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageReplayBufferTests {
+
+	private static final Long SESSION = 1L;
+
+	@Test
+	void replaysOnlyTheGap() {
+		MessageReplayBuffer buffer = buffer(4, 10L);
+		for (int i = 0; i < 3; i++) {
+			buffer.record(frame(buffer.nextSequence(SESSION)));
+		}
+
+		// Sequences continue after the highest one already stored
+		List<ChatMessageFrame> missed = buffer.since(SESSION, 11).orElseThrow();
+		assertEquals(List.of(12L, 13L), missed.stream().map(ChatMessageFrame::seq).toList());
+		assertTrue(buffer.since(SESSION, 13).orElseThrow().isEmpty());
+	}
+
+	@Test
+	void fallsBackWhenTheRingHasRolledPast() {
+		MessageReplayBuffer buffer = buffer(4, 0L);
+		for (int i = 0; i < 10; i++) {
+			buffer.record(frame(buffer.nextSequence(SESSION)));
+		}
+
+		assertTrue(buffer.since(SESSION, 2).isEmpty());
+		assertEquals(4, buffer.since(SESSION, 6).orElseThrow().size());
+		// Nothing is known about sessions this node has not seen
+		assertTrue(buffer.since(2L, 0).isEmpty());
+	}
+
+	private static MessageReplayBuffer buffer(int capacity, long storedMaxSeq) {
+		ChatMessageRepository repository = mock(ChatMessageRepository.class);
+		when(repository.findMaxSeq(SESSION)).thenReturn(Optional.of(storedMaxSeq));
+		return new MessageReplayBuffer(repository, mock(ChatMessageWriter.class), new SimpleMeterRegistry(), capacity);
+	}
+
+	private static ChatMessageFrame frame(long seq) {
+		return new ChatMessageFrame(SESSION, seq, seq, null, "message " + seq, "student", "Student", "2026-01-01T00:00", "TEXT");
+	}
+
+}
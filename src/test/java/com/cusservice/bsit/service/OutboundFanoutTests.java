@@ -0,0 +1,107 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundFanoutTests {
+
+	private static final Logger log = LoggerFactory.getLogger(OutboundFanoutTests.class);
+	private static final int ROUNDS = 20_000;
+
+	@Test
+	void encodesOncePerFanout() {
+		List<Message<?>> sent = new ArrayList<>();
+		SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+		OutboundFanout fanout = new OutboundFanout(template, new ObjectMapper());
+
+		fanout.sendToUsers("/queue/notifications", new ChatEvent.SessionEnded(7L), "student", null, "agent");
+
+		assertEquals(2, sent.size());
+		assertEquals("/user/student/queue/notifications", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+		assertEquals("/user/agent/queue/notifications", SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders()));
+		// Both recipients share one encoded body
+		assertSame(sent.get(0).getPayload(), sent.get(1).getPayload());
+		assertEquals("{\"type\":\"SESSION_ENDED\",\"sessionId\":7}",
+				new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Server cost per recipient of encoding once versus converting the payload
+	 * for every recipient, as convertAndSendToUser does. Tagged "benchmark", so
+	 * the default build skips it; run it with
+	 * -DexcludedGroups= -Dtest=OutboundFanoutTests#encodeOnceBenchmark.
+	 */
+	@Test
+	@Tag("benchmark")
+	void encodeOnceBenchmark() {
+		ObjectMapper objectMapper = new ObjectMapper();
+		MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+		converter.setObjectMapper(objectMapper);
+		// The broker is left out; only the work done before the message leaves the template counts
+		SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true);
+		template.setMessageConverter(converter);
+		OutboundFanout fanout = new OutboundFanout(template, objectMapper);
+		ChatEvent payload = new ChatEvent.SessionInfo(42L, "active", "Student Name", "2021-00042",
+				"Agent Name", "agent");
+
+		double encodeOnceNanos = 0;
+		double perRecipientNanos = 0;
+		for (int recipients : new int[] {2, 10, 50}) {
+			String[] usernames = IntStream.range(0, recipients).mapToObj(i -> "user" + i).toArray(String[]::new);
+			Consumer<Object> encodeOnce = event -> fanout.sendToUsers("/queue/notifications", event, usernames);
+			Consumer<Object> perRecipient = event -> {
+				for (String username : usernames) {
+					template.convertAndSendToUser(username, "/queue/notifications", event);
+				}
+			};
+
+			// The first pass of each warms up the JIT and is discarded
+			measure(encodeOnce, payload, recipients);
+			measure(perRecipient, payload, recipients);
+			Cost once = measure(encodeOnce, payload, recipients);
+			Cost each = measure(perRecipient, payload, recipients);
+			encodeOnceNanos = once.nanos();
+			perRecipientNanos = each.nanos();
+			log.info(String.format("%2d recipients, per delivered message: encode once %6.0f ns %6.0f B,"
+					+ " convert per recipient %6.0f ns %6.0f B", recipients, once.nanos(), once.bytes(), each.nanos(), each.bytes()));
+		}
+		assertTrue(encodeOnceNanos < perRecipientNanos, "encoding once is not cheaper for a large fanout");
+	}
+
+	private static Cost measure(Consumer<Object> send, Object payload, int recipients) {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			send.accept(payload);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+		double sends = (double) ROUNDS * recipients;
+		return new Cost(elapsed / sends, allocated / sends);
+	}
+
+	private record Cost(double nanos, double bytes) {
+	}
+
+}
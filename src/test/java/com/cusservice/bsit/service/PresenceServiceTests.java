@@ -0,0 +1,75 @@
+package com.cusservice.bsit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class PresenceServiceTests {
+
+	private static final Long SESSION = 1L;
+
+	private final ActiveSessionRegistry registry = mock(ActiveSessionRegistry.class);
+	private final ChatNotificationService notifications = mock(ChatNotificationService.class);
+	private final PresenceService presence = new PresenceService(registry, notifications, new SimpleMeterRegistry(), 5000);
+
+	@BeforeEach
+	void studentInChat() {
+		ActiveSession chat = new ActiveSession(SESSION,
+				new ActiveSession.Participant(1L, "student", "Student", "2021-0001"),
+				new ActiveSession.Participant(2L, "agent", "Agent", null));
+		when(registry.get(SESSION)).thenReturn(Optional.of(chat));
+		when(registry.sessionsOf("student")).thenReturn(List.of(chat));
+		presence.onConnect(connectEvent("student"));
+		presence.flush(0);
+		verify(notifications).sendPresence("agent", SESSION, "student", "ONLINE");
+	}
+
+	@Test
+	void typingBurstsAreCoalescedIntoOneChange() {
+		for (int i = 0; i < 20; i++) {
+			presence.setTyping(SESSION, "student", true, 1000 + i);
+		}
+		presence.flush(2000);
+		presence.flush(3000);
+		verify(notifications, times(1)).sendTyping("agent", SESSION, "student", true);
+
+		// Stops by itself once the reports dry up
+		presence.flush(7000);
+		presence.flush(8000);
+		verify(notifications, times(1)).sendTyping("agent", SESSION, "student", false);
+		verifyNoMoreInteractions(notifications);
+	}
+
+	@Test
+	void onlyTheStateAtFlushTimeIsSent() {
+		presence.setAway("student", true);
+		presence.setAway("student", false);
+		presence.flush(1000);
+
+		presence.setAway("student", true);
+		presence.flush(2000);
+		verify(notifications).sendPresence("agent", SESSION, "student", "AWAY");
+		verifyNoMoreInteractions(notifications);
+	}
+
+	private static SessionConnectEvent connectEvent(String username) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+		accessor.setSessionId("ws-" + username);
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+		return new SessionConnectEvent(new Object(), message, () -> username);
+	}
+}
@@ -0,0 +1,42 @@
+package com.cusservice.bsit.service;
+
+import com.cusservice.bsit.dto.ChatMessageFrame;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentMessageIdsTests {
+
+	@Test
+	void retriesAreRecognisedUntilEvicted() {
+		RecentMessageIds ids = new RecentMessageIds(2, 600);
+		ChatMessageFrame frame = new ChatMessageFrame(1L, 1L, 10L, "a", "hi", "student", "Student", "2026-01-01T00:00", "TEXT");
+
+		assertTrue(ids.reserve(1L, "a"));
+		assertFalse(ids.reserve(1L, "a"));
+		// In flight: nothing to acknowledge yet
+		assertTrue(ids.completed(1L, "a").isEmpty());
+
+		ids.complete(1L, "a", frame);
+		assertEquals(frame, ids.completed(1L, "a").orElseThrow());
+		// IDs are per session
+		assertTrue(ids.reserve(2L, "a"));
+
+		// Capacity 2: the oldest ID is forgotten
+		assertTrue(ids.reserve(1L, "b"));
+		assertTrue(ids.reserve(1L, "c"));
+		assertTrue(ids.reserve(1L, "a"));
+	}
+
+	@Test
+	void releasedIdsCanBeRetried() {
+		RecentMessageIds ids = new RecentMessageIds(16, 600);
+
+		assertTrue(ids.reserve(1L, "a"));
+		ids.release(1L, "a");
+		assertTrue(ids.reserve(1L, "a"));
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.cusservice.bsit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTests {
+
+	@Test
+	void expiresOnlyAfterDeadline() {
+		TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+		wheel.schedule("alice", 250, 0);
+		wheel.schedule("bob", 5_000, 0);
+
+		assertTrue(wheel.advance(200).isEmpty());
+		assertEquals(List.of("alice"), wheel.advance(300));
+		// Longer than one revolution of the wheel
+		assertTrue(wheel.advance(4_900).isEmpty());
+		assertEquals(List.of("bob"), wheel.advance(5_000));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void cancelAndRescheduleReplaceTimeout() {
+		TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+		wheel.schedule("alice", 200, 0);
+		assertTrue(wheel.cancel("alice"));
+		assertFalse(wheel.cancel("alice"));
+
+		wheel.schedule("bob", 200, 0);
+		wheel.schedule("bob", 1_000, 100);
+		assertTrue(wheel.advance(500).isEmpty());
+		assertEquals(List.of("bob"), wheel.advance(1_100));
+	}
+
+	@Test
+	void pendingTimeoutsStayBoundedUnderConnectionChurn() {
+		long grace = 60_000;
+		TimingWheel<Integer> wheel = new TimingWheel<>(1_000, 64, 0);
+		Map<Integer, Long> disconnectedAt = new HashMap<>();
+		Random random = new Random(7);
+		int users = 500;
+
+		// Ten simulated minutes of users dropping and reconnecting every 100ms
+		for (long now = 0; now < 600_000; now += 100) {
+			int user = random.nextInt(users);
+			if (disconnectedAt.containsKey(user)) {
+				wheel.cancel(user);
+				disconnectedAt.remove(user);
+			} else {
+				wheel.schedule(user, grace, now);
+				disconnectedAt.put(user, now);
+			}
+			for (Integer expired : wheel.advance(now)) {
+				assertTrue(now - disconnectedAt.remove(expired) >= grace);
+			}
+			assertEquals(disconnectedAt.size(), wheel.size());
+			assertTrue(wheel.size() <= users);
+		}
+	}
+
+}
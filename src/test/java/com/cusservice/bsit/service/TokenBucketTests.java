@@ -0,0 +1,31 @@
+package com.cusservice.bsit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTests {
+
+	@Test
+	void allowsBurstThenRefills() {
+		TokenBucket bucket = new TokenBucket(3, 1, TimeUnit.SECONDS);
+		long now = System.nanoTime();
+		long second = TimeUnit.SECONDS.toNanos(1);
+
+		assertTrue(bucket.tryAcquire(now));
+		assertTrue(bucket.tryAcquire(now));
+		assertTrue(bucket.tryAcquire(now));
+		assertFalse(bucket.tryAcquire(now));
+		assertEquals(second, bucket.nanosUntilAvailable(now));
+
+		assertTrue(bucket.tryAcquire(now + second));
+		assertFalse(bucket.tryAcquire(now + second));
+		assertFalse(bucket.isFull(now + second));
+		assertTrue(bucket.isFull(now + 4 * second));
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.cusservice.bsit.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WaitingQueueTests {
+
+	private static final Logger log = LoggerFactory.getLogger(WaitingQueueTests.class);
+	private static final int LOOKUPS = 2000;
+
+	@Test
+	void positionsFollowTicketOrder() {
+		WaitingQueue<Long> queue = new WaitingQueue<>(id -> id);
+		long first = queue.add(10L);
+		long second = queue.add(20L);
+		queue.add(30L);
+
+		assertTrue(first < second);
+		assertEquals(3, queue.size());
+		assertEquals(2, queue.position(20L));
+
+		queue.remove(10L);
+		assertEquals(1, queue.position(20L));
+		assertEquals(2, queue.position(30L));
+		assertEquals(-1, queue.position(10L));
+		assertEquals(20L, queue.poll().orElseThrow());
+		assertEquals(List.of(30L), queue.snapshot());
+	}
+
+	@Test
+	void readdingKeepsOriginalTicket() {
+		WaitingQueue<Long> queue = new WaitingQueue<>(id -> id);
+		long ticket = queue.add(1L);
+		queue.add(2L);
+
+		assertEquals(ticket, queue.add(1L));
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.position(1L));
+	}
+
+	@Test
+	void snapshotIsReusedUntilQueueChanges() {
+		WaitingQueue<Long> queue = new WaitingQueue<>(id -> id);
+		queue.add(1L);
+		queue.add(2L);
+
+		WaitingQueue.Snapshot<Long> first = queue.versionedSnapshot();
+		assertSame(first, queue.versionedSnapshot());
+		assertEquals(List.of(1L, 2L), first.entries());
+
+		queue.remove(1L);
+		WaitingQueue.Snapshot<Long> second = queue.versionedSnapshot();
+		assertNotEquals(first.version(), second.version());
+		assertEquals(List.of(2L), second.entries());
+		assertEquals(List.of(1L, 2L), first.entries());
+	}
+
+	@Test
+	void matchesLinearQueueUnderRandomChurn() {
+		WaitingQueue<Long> queue = new WaitingQueue<>(id -> id);
+		List<Long> reference = new ArrayList<>();
+		Random random = new Random(42);
+		long nextId = 1;
+
+		for (int i = 0; i < 20_000; i++) {
+			int op = random.nextInt(10);
+			if (op < 5 || reference.isEmpty()) {
+				queue.add(nextId);
+				reference.add(nextId++);
+			} else if (op < 8) {
+				Long id = reference.remove(random.nextInt(reference.size()));
+				assertTrue(queue.remove(id).isPresent());
+			} else {
+				assertEquals(reference.remove(0), queue.poll().orElseThrow());
+			}
+
+			assertEquals(reference.size(), queue.size());
+			if (!reference.isEmpty()) {
+				int probe = random.nextInt(reference.size());
+				assertEquals(probe + 1, queue.position(reference.get(probe)));
+			}
+		}
+		assertEquals(reference, queue.snapshot());
+	}
+
+	/**
+	 * Position lookups against the linear scan the queue replaced. Tagged
+	 * "benchmark", so the default build skips it; run it with
+	 * -DexcludedGroups= -Dtest=WaitingQueueTests#positionLookupBenchmark.
+	 */
+	@Test
+	@Tag("benchmark")
+	void positionLookupBenchmark() {
+		Random random = new Random(7);
+		double indexedNanos = 0;
+		double linearNanos = 0;
+		for (int size : new int[] {1_000, 10_000, 100_000}) {
+			WaitingQueue<Long> queue = new WaitingQueue<>(id -> id);
+			Queue<Long> linear = new ConcurrentLinkedQueue<>();
+			for (long id = 1; id <= size; id++) {
+				queue.add(id);
+				linear.add(id);
+			}
+			long[] probes = random.longs(LOOKUPS, 1, size + 1).toArray();
+
+			// The first pass of each warms up the JIT and is discarded
+			timeLookups(probes, id -> queue.position(id));
+			timeLookups(probes, id -> linearPosition(linear, id));
+			indexedNanos = timeLookups(probes, id -> queue.position(id));
+			linearNanos = timeLookups(probes, id -> linearPosition(linear, id));
+			log.info(String.format("%,9d waiting: indexed %10.0f ns/lookup, linear scan %12.0f ns/lookup",
+					size, indexedNanos, linearNanos));
+		}
+		assertTrue(indexedNanos < linearNanos, "indexed lookup is not faster on a long queue");
+	}
+
+	private static double timeLookups(long[] probes, LongToIntFunction lookup) {
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (long probe : probes) {
+			checksum += lookup.applyAsInt(probe);
+		}
+		long elapsed = System.nanoTime() - start;
+		// Every probe is queued, so no lookup may come back empty
+		assertTrue(checksum >= probes.length);
+		return (double) elapsed / probes.length;
+	}
+
+	// How ChatService found a position before the indexed queue
+	private static int linearPosition(Queue<Long> queue, long id) {
+		int position = 0;
+		for (Long queued : queue) {
+			position++;
+			if (queued == id) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+}